@@ -11,10 +11,10 @@ public class AndServerH2 {
     /**
      * Create a builder for the asynchronous web server.
      *
-     * @return {@link H2Server.Builder}.
+     * @return {@link H2Server.WebBuilder}.
      */
     @NonNull
-    public static H2Server.Builder<?, ?> webServerH2(@NonNull Context context) {
+    public static H2Server.WebBuilder<?, ?> webServerH2(@NonNull Context context) {
         return webServerH2(context, "default");
     }
 
@@ -22,10 +22,10 @@ public class AndServerH2 {
      * Create a builder for the asynchronous web server.
      *
      * @param group group name.
-     * @return {@link H2Server.Builder}.
+     * @return {@link H2Server.WebBuilder}.
      */
     @NonNull
-    public static H2Server.Builder<?, ?> webServerH2(@NonNull Context context,
+    public static H2Server.WebBuilder<?, ?> webServerH2(@NonNull Context context,
                                                      @NonNull String group) {
         return H2WebServer.newBuilder(context, group);
     }
@@ -26,6 +26,7 @@ import com.yanzhenjie.andserver.delegate.ListenerEndpoint;
 import com.yanzhenjie.andserver.delegate.ssl.BasicClientTlsStrategy;
 import com.yanzhenjie.andserver.delegate.ssl.BasicServerTlsStrategy;
 import com.yanzhenjie.andserver.delegate.ssl.TlsStrategy;
+import com.yanzhenjie.andserver.handler.async.ExecutionMode;
 import com.yanzhenjie.andserver.http.URIScheme;
 import com.yanzhenjie.andserver.http2.HttpVersionPolicy;
 
@@ -124,6 +125,21 @@ public interface H2Server extends Server {
         T setStreamListener(H2StreamListener streamListener);
     }
 
+    interface WebBuilder<T extends WebBuilder<T, S>, S extends H2Server>
+            extends Builder<T, S>, Server.WebBuilder<T, S, ServerListener> {
+
+        /**
+         * Assigns {@link ExecutionMode} instance, the requests are dispatched on the IO reactor thread by default.
+         */
+        T setExecutionMode(ExecutionMode executionMode);
+
+        /**
+         * Assigns the max number of bytes of a request body kept in memory, the larger bodies are spilled to temp
+         * files in the cache directory. It is 1 MiB by default.
+         */
+        T setRequestBodyThreshold(int threshold);
+    }
+
     interface ProxyBuilder<T extends ProxyBuilder<T, S>, S extends H2Server>
             extends Builder<T, S>, Server.ProxyBuilder<T, S, ServerListener> {
     }
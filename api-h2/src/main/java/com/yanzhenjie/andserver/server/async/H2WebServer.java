@@ -18,15 +18,24 @@ package com.yanzhenjie.andserver.server.async;
 import android.content.Context;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.yanzhenjie.andserver.ComponentRegister;
+import com.yanzhenjie.andserver.handler.DispatchStats;
 import com.yanzhenjie.andserver.H2Server;
 import com.yanzhenjie.andserver.handler.async.AsyncDispatcherHandler;
+import com.yanzhenjie.andserver.handler.async.ExecutionMode;
+import com.yanzhenjie.andserver.handler.async.SpillingEntityConsumer;
+import com.yanzhenjie.andserver.handler.async.WorkerPool;
+import com.yanzhenjie.andserver.http.session.SessionManager;
+import com.yanzhenjie.andserver.http.session.StandardSessionManager;
+import com.yanzhenjie.andserver.util.IOUtils;
 
 import org.apache.commons.lang3.tuple.ImmutableTriple;
 import org.apache.hc.core5.function.Supplier;
 import org.apache.hc.core5.http.nio.AsyncServerExchangeHandler;
 
+import java.io.Closeable;
 import java.util.Collection;
 import java.util.Collections;
 
@@ -37,11 +46,22 @@ public class H2WebServer extends BasicH2Server<H2WebServer.Builder> {
 
     private final Context mContext;
     private final String mGroup;
+    private final boolean isRouteIndex;
+    private final SessionManager mSessionManager;
+    private final ExecutionMode mExecutionMode;
+    private final int mRequestBodyThreshold;
+
+    private volatile AsyncDispatcherHandler mDispatcherHandler;
 
     private H2WebServer(Builder builder) {
         super(builder);
         this.mContext = builder.context;
         this.mGroup = builder.group;
+        this.isRouteIndex = builder.routeIndex;
+        this.mSessionManager = builder.sessionManager == null
+            ? new StandardSessionManager(builder.context) : builder.sessionManager;
+        this.mExecutionMode = builder.executionMode == null ? ExecutionMode.inline() : builder.executionMode;
+        this.mRequestBodyThreshold = builder.requestBodyThreshold;
     }
 
     public static Builder newBuilder(Context context, String group) {
@@ -51,29 +71,102 @@ public class H2WebServer extends BasicH2Server<H2WebServer.Builder> {
     @NonNull
     @Override
     protected Collection<ImmutableTriple<String, String, Supplier<AsyncServerExchangeHandler>>> requestHandlers() {
-        return Collections.singletonList(new ImmutableTriple<>(null, "*", () -> {
-            AsyncDispatcherHandler handler = new AsyncDispatcherHandler(mContext);
-            ComponentRegister register = new ComponentRegister(mContext);
-            try {
-                register.register(handler, mGroup);
-            } catch (InstantiationException | IllegalAccessException e) {
-                throw new RuntimeException(e);
+        AsyncDispatcherHandler handler = new AsyncDispatcherHandler(mContext, mSessionManager);
+        handler.setRouteIndex(isRouteIndex);
+        handler.setWorkerPool(mExecutionMode.newWorkerPool());
+        handler.setRequestBodyThreshold(mRequestBodyThreshold);
+        ComponentRegister register = new ComponentRegister(mContext);
+        try {
+            register.register(handler, mGroup);
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+        mDispatcherHandler = handler;
+        return Collections.singletonList(new ImmutableTriple<>(null, "*", handler));
+    }
+
+    @Nullable
+    @Override
+    protected Runnable requestShutdownHook() {
+        AsyncDispatcherHandler handler = mDispatcherHandler;
+        return () -> {
+            if (handler != null) {
+                handler.shutdown();
+            }
+            // Write the sessions which are not flushed yet, they would be lost when the process is killed.
+            if (mSessionManager instanceof Closeable) {
+                IOUtils.closeQuietly((Closeable) mSessionManager);
             }
-            return handler;
-        }));
+        };
+    }
+
+    /**
+     * Get the sessions of this server.
+     */
+    @NonNull
+    public SessionManager getSessionManager() {
+        return mSessionManager;
+    }
+
+    /**
+     * Get the counters of the adapter lookups, the dispatcher is created when the server starts up.
+     *
+     * @return the counters, or {@code null} if the server has not been started.
+     */
+    @Nullable
+    public DispatchStats getDispatchStats() {
+        return mDispatcherHandler == null ? null : mDispatcherHandler.getDispatchStats();
+    }
+
+    /**
+     * Get the workers which run the dispatcher, they are created when the server starts up.
+     *
+     * @return the workers, or {@code null} if the server has not been started.
+     */
+    @Nullable
+    public WorkerPool getWorkerPool() {
+        return mDispatcherHandler == null ? null : mDispatcherHandler.getWorkerPool();
     }
 
     public static class Builder extends BasicH2Server.Builder<Builder, H2WebServer>
-            implements H2Server.Builder<Builder, H2WebServer> {
+            implements H2Server.WebBuilder<Builder, H2WebServer> {
 
         private final Context context;
         private final String group;
+        private boolean routeIndex;
+        private SessionManager sessionManager;
+        private ExecutionMode executionMode;
+        private int requestBodyThreshold = SpillingEntityConsumer.DEFAULT_THRESHOLD;
 
         private Builder(Context context, String group) {
             this.context = context;
             this.group = group;
         }
 
+        @Override
+        public Builder setRouteIndex(boolean routeIndex) {
+            this.routeIndex = routeIndex;
+            return this;
+        }
+
+        @Override
+        public Builder setSessionManager(SessionManager sessionManager) {
+            this.sessionManager = sessionManager;
+            return this;
+        }
+
+        @Override
+        public Builder setExecutionMode(ExecutionMode executionMode) {
+            this.executionMode = executionMode;
+            return this;
+        }
+
+        @Override
+        public Builder setRequestBodyThreshold(int threshold) {
+            this.requestBodyThreshold = threshold;
+            return this;
+        }
+
         @Override
         public H2WebServer build() {
             return new H2WebServer(this);
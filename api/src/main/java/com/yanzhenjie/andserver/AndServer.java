@@ -47,10 +47,10 @@ public class AndServer {
     /**
      * Create a builder for the web server.
      *
-     * @return {@link ClassicServer.Builder}.
+     * @return {@link ClassicServer.WebBuilder}.
      */
     @NonNull
-    public static ClassicServer.Builder<?, ?> webServer(@NonNull Context context) {
+    public static ClassicServer.WebBuilder<?, ?> webServer(@NonNull Context context) {
         return webServer(context, "default");
     }
 
@@ -58,10 +58,10 @@ public class AndServer {
      * Create a builder for the web server.
      *
      * @param group group name.
-     * @return {@link ClassicServer.Builder}.
+     * @return {@link ClassicServer.WebBuilder}.
      */
     @NonNull
-    public static ClassicServer.Builder<?, ?> webServer(@NonNull Context context,
+    public static ClassicServer.WebBuilder<?, ?> webServer(@NonNull Context context,
                                                         @NonNull String group) {
         return ClassicWebServer.newBuilder(context, group);
     }
@@ -69,10 +69,10 @@ public class AndServer {
     /**
      * Create a builder for the asynchronous web server.
      *
-     * @return {@link AsyncServer.Builder}.
+     * @return {@link AsyncServer.WebBuilder}.
      */
     @NonNull
-    public static AsyncServer.Builder<?, ?> webServerAsync(@NonNull Context context) {
+    public static AsyncServer.WebBuilder<?, ?> webServerAsync(@NonNull Context context) {
         return webServerAsync(context, "default");
     }
 
@@ -80,10 +80,10 @@ public class AndServer {
      * Create a builder for the asynchronous web server.
      *
      * @param group group name.
-     * @return {@link AsyncServer.Builder}.
+     * @return {@link AsyncServer.WebBuilder}.
      */
     @NonNull
-    public static AsyncServer.Builder<?, ?> webServerAsync(@NonNull Context context,
+    public static AsyncServer.WebBuilder<?, ?> webServerAsync(@NonNull Context context,
                                                            @NonNull String group) {
         return AsyncWebServer.newBuilder(context, group);
     }
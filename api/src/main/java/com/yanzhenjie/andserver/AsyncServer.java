@@ -24,6 +24,7 @@ import com.yanzhenjie.andserver.delegate.ListenerEndpoint;
 import com.yanzhenjie.andserver.delegate.ssl.BasicClientTlsStrategy;
 import com.yanzhenjie.andserver.delegate.ssl.BasicServerTlsStrategy;
 import com.yanzhenjie.andserver.delegate.ssl.TlsStrategy;
+import com.yanzhenjie.andserver.handler.async.ExecutionMode;
 import com.yanzhenjie.andserver.http.URIScheme;
 
 import org.apache.hc.core5.function.Decorator;
@@ -105,6 +106,21 @@ public interface AsyncServer extends Server {
         T setIOSessionListener(IOSessionListener sessionListener);
     }
 
+    interface WebBuilder<T extends WebBuilder<T, S>, S extends AsyncServer>
+            extends Builder<T, S>, Server.WebBuilder<T, S, ServerListener> {
+
+        /**
+         * Assigns {@link ExecutionMode} instance, the requests are dispatched on the IO reactor thread by default.
+         */
+        T setExecutionMode(ExecutionMode executionMode);
+
+        /**
+         * Assigns the max number of bytes of a request body kept in memory, the larger bodies are spilled to temp
+         * files in the cache directory. It is 1 MiB by default.
+         */
+        T setRequestBodyThreshold(int threshold);
+    }
+
     interface ProxyBuilder<T extends ProxyBuilder<T, S>, S extends AsyncServer>
             extends Builder<T, S>, Server.ProxyBuilder<T, S, ServerListener> {
     }
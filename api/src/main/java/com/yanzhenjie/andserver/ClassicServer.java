@@ -109,6 +109,10 @@ public interface ClassicServer extends Server {
         T setExceptionListener(ExceptionListener exceptionListener);
     }
 
+    interface WebBuilder<T extends WebBuilder<T, S>, S extends ClassicServer>
+            extends Builder<T, S>, Server.WebBuilder<T, S, ServerListener> {
+    }
+
     interface ProxyBuilder<T extends ProxyBuilder<T, S>, S extends ClassicServer>
             extends Server.Builder<T, S, ServerListener>, Server.ProxyBuilder<T, S, ServerListener> {
     }
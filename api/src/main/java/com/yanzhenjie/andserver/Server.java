@@ -21,6 +21,7 @@ import com.yanzhenjie.andserver.delegate.ConnectionReuseStrategy;
 import com.yanzhenjie.andserver.delegate.Http1ConfigDelegate;
 import com.yanzhenjie.andserver.delegate.Http1StreamListener;
 import com.yanzhenjie.andserver.delegate.HttpProcessor;
+import com.yanzhenjie.andserver.http.session.SessionManager;
 
 import java.net.URISyntaxException;
 
@@ -88,6 +89,22 @@ public interface Server {
         S build();
     }
 
+    interface WebBuilder<T extends WebBuilder<T, S, L>, S extends Server,
+            L extends ServerListener> extends Builder<T, S, L> {
+
+        /**
+         * Dispatch the requests through one route index of all the controllers, the websites are only asked when the
+         * index misses. It is disabled by default, the adapters are asked one by one in the registered order.
+         */
+        T setRouteIndex(boolean routeIndex);
+
+        /**
+         * Assigns {@link SessionManager} instance, it is shared by all the requests of the server. The server creates
+         * a {@link com.yanzhenjie.andserver.http.session.StandardSessionManager} by default.
+         */
+        T setSessionManager(SessionManager sessionManager);
+    }
+
     interface ProxyBuilder<T extends ProxyBuilder<T, S, L>, S extends Server,
             L extends ServerListener> extends Builder<T, S, L> {
 
@@ -21,6 +21,9 @@ import androidx.annotation.NonNull;
 
 import com.yanzhenjie.andserver.AndServer;
 import com.yanzhenjie.andserver.framework.handler.RequestHandler;
+import com.yanzhenjie.andserver.framework.website.ResolvedResource;
+import com.yanzhenjie.andserver.http.HttpContext;
+import com.yanzhenjie.andserver.http.HttpHeaders;
 import com.yanzhenjie.andserver.http.HttpMethod;
 import com.yanzhenjie.andserver.http.HttpRequest;
 import com.yanzhenjie.andserver.http.HttpResponse;
@@ -52,7 +55,20 @@ public class ModifiedInterceptor implements HandlerInterceptor {
             } catch (Throwable e) {
                 Log.w(TAG, e);
             }
-            return new Modified(request, response).process(eTag, lastModified);
+            Modified modified = new Modified(request, response);
+            boolean notModified = modified.process(eTag, lastModified);
+            if (!notModified && method == HttpMethod.GET && request.getHeader(HttpHeaders.RANGE) != null) {
+                request.setAttribute(HttpContext.REQUEST_RANGE_APPLICABLE,
+                    modified.validateIfRange(eTag, lastModified));
+            }
+            if (notModified) {
+                // The body is not written, the variance of the representation is kept for the caches.
+                Object resource = request.getAttribute(HttpContext.REQUEST_RESOLVED_RESOURCE);
+                if (resource instanceof ResolvedResource && ((ResolvedResource) resource).isVaryEncoding()) {
+                    response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+                }
+            }
+            return notModified;
         }
         return false;
     }
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2022 ISNing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.andserver.framework.body;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.yanzhenjie.andserver.http.ResponseBody;
+import com.yanzhenjie.andserver.util.ContentTypes;
+import com.yanzhenjie.andserver.util.MediaType;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.entity.AbstractHttpEntity;
+import org.apache.hc.core5.http.nio.AsyncEntityProducer;
+import org.apache.hc.core5.http.nio.DataStreamChannel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Set;
+
+/**
+ * The body of the bytes which are already in memory, e.g. a mapped file. The buffer is shared, every entity reads a
+ * duplicate of it, so the position and limit of the buffer are never changed.
+ */
+public class ByteBufferBody implements ResponseBody {
+
+    private final ByteBuffer mBody;
+    private final MediaType mMediaType;
+
+    public ByteBufferBody(ByteBuffer body) {
+        this(body, MediaType.APPLICATION_OCTET_STREAM);
+    }
+
+    public ByteBufferBody(ByteBuffer body, MediaType mediaType) {
+        if (body == null) {
+            throw new IllegalArgumentException("The buffer cannot be null.");
+        }
+        this.mBody = body;
+        this.mMediaType = mediaType;
+    }
+
+    public long getContentLength() {
+        return mBody.remaining();
+    }
+
+    /**
+     * Get a read-only view of the buffer, its position and limit are independent of the body.
+     */
+    @NonNull
+    public ByteBuffer getBuffer() {
+        return mBody.asReadOnlyBuffer();
+    }
+
+    public String getContentType() {
+        MediaType mimeType = this.getContentTypeMedia();
+        if (mimeType == null) {
+            return null;
+        }
+        return mimeType.toString();
+    }
+
+    @Nullable
+    @Override
+    public MediaType getContentTypeMedia() {
+        return mMediaType;
+    }
+
+    @NonNull
+    @Override
+    public AsyncEntityProducer toEntityProducer() {
+        return new BufferEntityProducer(mBody.duplicate(), getContentType());
+    }
+
+    @NonNull
+    @Override
+    public HttpEntity toEntity() {
+        return new BufferEntity(mBody, ContentTypes.valueOf(getContentTypeMedia()));
+    }
+
+    private static class BufferEntity extends AbstractHttpEntity {
+
+        private final ByteBuffer mBuffer;
+
+        private BufferEntity(ByteBuffer buffer, ContentType contentType) {
+            super(contentType, null);
+            this.mBuffer = buffer;
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public long getContentLength() {
+            return mBuffer.remaining();
+        }
+
+        @Override
+        public InputStream getContent() {
+            ByteBuffer buffer = mBuffer.duplicate();
+            return new InputStream() {
+                @Override
+                public int read() {
+                    return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+                }
+
+                @Override
+                public int read(@NonNull byte[] b, int off, int len) {
+                    if (!buffer.hasRemaining()) {
+                        return -1;
+                    }
+                    int count = Math.min(len, buffer.remaining());
+                    buffer.get(b, off, count);
+                    return count;
+                }
+
+                @Override
+                public int available() {
+                    return buffer.remaining();
+                }
+            };
+        }
+
+        @Override
+        public void writeTo(OutputStream outStream) throws IOException {
+            ByteBuffer buffer = mBuffer.duplicate();
+            if (buffer.hasArray()) {
+                outStream.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            } else {
+                Channels.newChannel(outStream).write(buffer);
+            }
+            outStream.flush();
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static class BufferEntityProducer implements AsyncEntityProducer {
+
+        private final ByteBuffer mBuffer;
+        private final String mContentType;
+
+        private BufferEntityProducer(ByteBuffer buffer, String contentType) {
+            this.mBuffer = buffer;
+            this.mContentType = contentType;
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return false;
+        }
+
+        @Override
+        public long getContentLength() {
+            return mBuffer.remaining();
+        }
+
+        @Override
+        public String getContentType() {
+            return mContentType;
+        }
+
+        @Override
+        public String getContentEncoding() {
+            return null;
+        }
+
+        @Override
+        public boolean isChunked() {
+            return false;
+        }
+
+        @Override
+        public Set<String> getTrailerNames() {
+            return null;
+        }
+
+        @Override
+        public int available() {
+            return mBuffer.remaining();
+        }
+
+        @Override
+        public void produce(DataStreamChannel channel) throws IOException {
+            // Write what the channel takes now, the rest is produced when the channel asks again.
+            while (mBuffer.hasRemaining()) {
+                if (channel.write(mBuffer) == 0) {
+                    return;
+                }
+            }
+            channel.endStream();
+        }
+
+        @Override
+        public void failed(Exception cause) {
+        }
+
+        @Override
+        public void releaseResources() {
+        }
+    }
+}
@@ -0,0 +1,352 @@
+/*
+ * Copyright (C) 2022 ISNing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.andserver.framework.body;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.yanzhenjie.andserver.http.ByteRange;
+import com.yanzhenjie.andserver.http.ResponseBody;
+import com.yanzhenjie.andserver.util.ContentTypes;
+import com.yanzhenjie.andserver.util.MediaType;
+
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.entity.AbstractHttpEntity;
+import org.apache.hc.core5.http.nio.AsyncEntityProducer;
+import org.apache.hc.core5.http.nio.DataStreamChannel;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * The {@code multipart/byteranges} body of a response to a request for several ranges, every part is the body of one
+ * range.
+ */
+public class ByteRangesBody implements ResponseBody {
+
+    private final List<ResponseBody> mParts;
+    private final byte[][] mHeads;
+    private final byte[] mTail;
+    private final long mLength;
+    private final MediaType mMediaType;
+
+    /**
+     * Create a body.
+     *
+     * @param parts the bodies of the ranges, each of them holds the bytes of its range only.
+     * @param ranges the ranges, in the order of the parts.
+     * @param mediaType the media type of the representation.
+     * @param completeLength the length of the representation.
+     */
+    public ByteRangesBody(@NonNull List<ResponseBody> parts, @NonNull List<ByteRange> ranges,
+                          @Nullable MediaType mediaType, long completeLength) {
+        if (parts.size() != ranges.size()) {
+            throw new IllegalArgumentException("Every range must have a part.");
+        }
+        String boundary = UUID.randomUUID().toString().replace("-", "");
+        this.mParts = parts;
+        this.mHeads = new byte[parts.size()][];
+        long length = 0;
+        for (int i = 0; i < ranges.size(); i++) {
+            ByteRange range = ranges.get(i);
+            StringBuilder head = new StringBuilder("\r\n--").append(boundary).append("\r\n");
+            if (mediaType != null) {
+                head.append("Content-Type: ").append(mediaType).append("\r\n");
+            }
+            head.append("Content-Range: ").append(range.toContentRange(completeLength)).append("\r\n\r\n");
+            mHeads[i] = head.toString().getBytes(StandardCharsets.US_ASCII);
+            length += mHeads[i].length + range.getLength();
+        }
+        this.mTail = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        this.mLength = length + mTail.length;
+        this.mMediaType = new MediaType("multipart", "byteranges",
+            Collections.singletonMap("boundary", boundary));
+    }
+
+    public long getContentLength() {
+        return mLength;
+    }
+
+    public String getContentType() {
+        return mMediaType.toString();
+    }
+
+    @NonNull
+    @Override
+    public MediaType getContentTypeMedia() {
+        return mMediaType;
+    }
+
+    @NonNull
+    @Override
+    public AsyncEntityProducer toEntityProducer() {
+        return new ByteRangesProducer();
+    }
+
+    @NonNull
+    @Override
+    public HttpEntity toEntity() {
+        return new AbstractHttpEntity(ContentTypes.valueOf(mMediaType), null) {
+            @Override
+            public boolean isRepeatable() {
+                return false;
+            }
+
+            @Override
+            public long getContentLength() {
+                return mLength;
+            }
+
+            @Override
+            public InputStream getContent() {
+                return new ByteRangesStream();
+            }
+
+            @Override
+            public void writeTo(OutputStream outStream) throws IOException {
+                for (int i = 0; i < mParts.size(); i++) {
+                    outStream.write(mHeads[i]);
+                    HttpEntity entity = mParts.get(i).toEntity();
+                    try {
+                        entity.writeTo(outStream);
+                    } finally {
+                        entity.close();
+                    }
+                }
+                outStream.write(mTail);
+                outStream.flush();
+            }
+
+            @Override
+            public boolean isStreaming() {
+                return false;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * Writes the head of a part, then lets the producer of the part write to the channel until it ends its stream.
+     */
+    private class ByteRangesProducer implements AsyncEntityProducer {
+
+        private final PartChannel mPartChannel = new PartChannel();
+
+        private ByteBuffer mHead;
+        private AsyncEntityProducer mPart;
+        private int mIndex;
+
+        @Override
+        public boolean isRepeatable() {
+            return false;
+        }
+
+        @Override
+        public long getContentLength() {
+            return mLength;
+        }
+
+        @Override
+        public String getContentType() {
+            return ByteRangesBody.this.getContentType();
+        }
+
+        @Override
+        public String getContentEncoding() {
+            return null;
+        }
+
+        @Override
+        public boolean isChunked() {
+            return false;
+        }
+
+        @Override
+        public Set<String> getTrailerNames() {
+            return null;
+        }
+
+        @Override
+        public int available() {
+            if (mHead != null && mHead.hasRemaining()) {
+                return mHead.remaining();
+            }
+            return mPart != null ? mPart.available() : mTail.length;
+        }
+
+        @Override
+        public void produce(DataStreamChannel channel) throws IOException {
+            mPartChannel.mChannel = channel;
+            while (true) {
+                if (mHead != null && mHead.hasRemaining()) {
+                    channel.write(mHead);
+                    if (mHead.hasRemaining()) {
+                        return;
+                    }
+                }
+                if (mPart != null) {
+                    mPart.produce(mPartChannel);
+                    if (!mPartChannel.isEnded) {
+                        return;
+                    }
+                    mPart.releaseResources();
+                    mPart = null;
+                }
+
+                if (mIndex < mParts.size()) {
+                    mHead = ByteBuffer.wrap(mHeads[mIndex]);
+                    mPart = mParts.get(mIndex).toEntityProducer();
+                    mPartChannel.isEnded = false;
+                    mIndex++;
+                } else if (mIndex == mParts.size()) {
+                    mHead = ByteBuffer.wrap(mTail);
+                    mIndex++;
+                } else {
+                    channel.endStream();
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public void failed(Exception cause) {
+            if (mPart != null) {
+                mPart.failed(cause);
+            }
+        }
+
+        @Override
+        public void releaseResources() {
+            if (mPart != null) {
+                mPart.releaseResources();
+                mPart = null;
+            }
+        }
+    }
+
+    /**
+     * Reads the head of a part, then the content of the part, the content of a part is only opened when it is reached.
+     */
+    private class ByteRangesStream extends InputStream {
+
+        private InputStream mStream;
+        private HttpEntity mEntity;
+        /**
+         * The next segment, the heads are the even ones, the parts are the odd ones and the tail is the last one.
+         */
+        private int mIndex;
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(@NonNull byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (mStream != null || next()) {
+                int count = mStream.read(b, off, len);
+                if (count >= 0) {
+                    return count;
+                }
+                closeSegment();
+            }
+            return -1;
+        }
+
+        private boolean next() throws IOException {
+            int size = mParts.size();
+            if (mIndex > size * 2) {
+                return false;
+            }
+            int index = mIndex++;
+            if (index == size * 2) {
+                mStream = new ByteArrayInputStream(mTail);
+            } else if (index % 2 == 0) {
+                mStream = new ByteArrayInputStream(mHeads[index / 2]);
+            } else {
+                mEntity = mParts.get(index / 2).toEntity();
+                mStream = mEntity.getContent();
+            }
+            return true;
+        }
+
+        private void closeSegment() throws IOException {
+            try {
+                if (mStream != null) {
+                    mStream.close();
+                }
+            } finally {
+                mStream = null;
+                if (mEntity != null) {
+                    HttpEntity entity = mEntity;
+                    mEntity = null;
+                    entity.close();
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            mIndex = mParts.size() * 2 + 1;
+            closeSegment();
+        }
+    }
+
+    /**
+     * The channel of a part, the end of the part is not the end of the body.
+     */
+    private static class PartChannel implements DataStreamChannel {
+
+        private DataStreamChannel mChannel;
+        private boolean isEnded;
+
+        @Override
+        public void requestOutput() {
+            mChannel.requestOutput();
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            return mChannel.write(src);
+        }
+
+        @Override
+        public void endStream() {
+            isEnded = true;
+        }
+
+        @Override
+        public void endStream(List<? extends Header> trailers) {
+            isEnded = true;
+        }
+    }
+}
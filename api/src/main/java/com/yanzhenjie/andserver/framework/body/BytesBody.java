@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2022 ISNing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.andserver.framework.body;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.yanzhenjie.andserver.util.MediaType;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The body of the bytes which are encoded once, e.g. a health check or a constant JSON. The body can be kept in a
+ * field and returned for every request, the bytes are shared and never copied or encoded again.
+ *
+ * <pre>
+ * private static final BytesBody OK = new BytesBody("{\"status\":\"UP\"}", MediaType.APPLICATION_JSON_UTF8);
+ * </pre>
+ */
+public class BytesBody extends ByteBufferBody {
+
+    /**
+     * Create a body of the bytes.
+     *
+     * @param body the bytes, they must not be changed after the body is created.
+     * @param mediaType the media type.
+     */
+    public BytesBody(@NonNull byte[] body, @Nullable MediaType mediaType) {
+        super(ByteBuffer.wrap(body), mediaType);
+    }
+
+    /**
+     * Create a body of the text, it is encoded with the charset of the media type, or UTF-8 if the media type has no
+     * charset.
+     *
+     * @param body the text.
+     * @param mediaType the media type, or {@code null} for {@code text/plain}.
+     */
+    public BytesBody(@NonNull String body, @Nullable MediaType mediaType) {
+        this(body.getBytes(StringBody.withCharset(mediaType).getCharset()), StringBody.withCharset(mediaType));
+    }
+}
@@ -20,28 +20,69 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.yanzhenjie.andserver.http.ResponseBody;
+import com.yanzhenjie.andserver.util.ContentTypes;
 import com.yanzhenjie.andserver.util.MediaType;
 
-import org.apache.hc.core5.http.ContentType;
 import org.apache.hc.core5.http.HttpEntity;
 import org.apache.hc.core5.http.io.entity.FileEntity;
 import org.apache.hc.core5.http.nio.AsyncEntityProducer;
+import org.apache.hc.core5.http.nio.DataStreamChannel;
 import org.apache.hc.core5.http.nio.entity.FileEntityProducer;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Set;
 
 /**
  * Created by Zhenjie Yan on 2018/8/6.
  */
 public class FileBody implements ResponseBody {
 
+    private static final int BUFFER = 8 * 1024;
+
     private final File mBody;
+    private final MediaType mMediaType;
+    private final long mPosition;
+    private final long mLength;
 
     public FileBody(File body) {
+        this(body, null);
+    }
+
+    /**
+     * Create a body whose media type is not guessed from the name of the file, e.g. a precompressed {@code .gz}
+     * file.
+     *
+     * @param body the file.
+     * @param mediaType the media type, or {@code null} to guess it from the name of the file.
+     */
+    public FileBody(File body, @Nullable MediaType mediaType) {
+        this(body, mediaType, 0, -1);
+    }
+
+    /**
+     * Create a body of a region of the file, e.g. a byte range.
+     *
+     * @param body the file.
+     * @param mediaType the media type, or {@code null} to guess it from the name of the file.
+     * @param position the position of the first byte of the region.
+     * @param length the length of the region, or {@code -1} for the whole file.
+     */
+    public FileBody(File body, @Nullable MediaType mediaType, long position, long length) {
         if (body == null) {
             throw new IllegalArgumentException("The file cannot be null.");
         }
         this.mBody = body;
+        this.mMediaType = mediaType;
+        this.mPosition = position;
+        this.mLength = length;
+    }
+
+    public long getContentLength() {
+        return mLength >= 0 ? mLength : mBody.length();
     }
 
     public String getContentType() {
@@ -55,18 +96,133 @@ public class FileBody implements ResponseBody {
     @Nullable
     @Override
     public MediaType getContentTypeMedia() {
+        if (mMediaType != null) {
+            return mMediaType;
+        }
         return MediaType.getFileMediaType(mBody.getName());
     }
 
     @NonNull
     @Override
     public AsyncEntityProducer toEntityProducer() {
-        return new FileEntityProducer(mBody, ContentType.parse(getContentType()));
+        if (mLength >= 0) {
+            return new FileRegionProducer(mBody, mPosition, mLength, getContentType());
+        }
+        return new FileEntityProducer(mBody, ContentTypes.valueOf(getContentTypeMedia()));
     }
 
     @NonNull
     @Override
     public HttpEntity toEntity() {
-        return new FileEntity(mBody, ContentType.parse(getContentType()));
+        if (mLength >= 0) {
+            return new FileRegionEntity(mBody, mPosition, mLength, ContentTypes.valueOf(getContentTypeMedia()));
+        }
+        return new FileEntity(mBody, ContentTypes.valueOf(getContentTypeMedia()));
+    }
+
+    /**
+     * Reads the region with positioned reads, a chunk is only read after the channel has taken the previous one.
+     */
+    private static class FileRegionProducer implements AsyncEntityProducer {
+
+        private final File mFile;
+        private final long mPosition;
+        private final long mLength;
+        private final String mContentType;
+
+        private final ByteBuffer mBuffer;
+        private RandomAccessFile mRandomAccessFile;
+        private long mRead;
+
+        private FileRegionProducer(File file, long position, long length, String contentType) {
+            this.mFile = file;
+            this.mPosition = position;
+            this.mLength = length;
+            this.mContentType = contentType;
+            this.mBuffer = ByteBuffer.allocate((int) Math.min(BUFFER, Math.max(length, 1)));
+            mBuffer.flip();
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return false;
+        }
+
+        @Override
+        public long getContentLength() {
+            return mLength;
+        }
+
+        @Override
+        public String getContentType() {
+            return mContentType;
+        }
+
+        @Override
+        public String getContentEncoding() {
+            return null;
+        }
+
+        @Override
+        public boolean isChunked() {
+            return false;
+        }
+
+        @Override
+        public Set<String> getTrailerNames() {
+            return null;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, mLength - mRead + mBuffer.remaining());
+        }
+
+        @Override
+        public void produce(DataStreamChannel channel) throws IOException {
+            while (true) {
+                if (mBuffer.hasRemaining()) {
+                    channel.write(mBuffer);
+                    if (mBuffer.hasRemaining()) {
+                        return;
+                    }
+                }
+                if (mRead >= mLength) {
+                    channel.endStream();
+                    releaseResources();
+                    return;
+                }
+
+                if (mRandomAccessFile == null) {
+                    mRandomAccessFile = new RandomAccessFile(mFile, "r");
+                }
+                FileChannel file = mRandomAccessFile.getChannel();
+                mBuffer.clear();
+                if (mLength - mRead < mBuffer.capacity()) {
+                    mBuffer.limit((int) (mLength - mRead));
+                }
+                int count = file.read(mBuffer, mPosition + mRead);
+                if (count < 0) {
+                    throw new IOException("The file is shorter than the region.");
+                }
+                mRead += count;
+                mBuffer.flip();
+            }
+        }
+
+        @Override
+        public void failed(Exception cause) {
+        }
+
+        @Override
+        public void releaseResources() {
+            if (mRandomAccessFile != null) {
+                try {
+                    mRandomAccessFile.close();
+                } catch (IOException ignored) {
+                }
+                mRandomAccessFile = null;
+            }
+        }
     }
 }
\ No newline at end of file
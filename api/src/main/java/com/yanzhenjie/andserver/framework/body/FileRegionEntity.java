@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2022 ISNing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.andserver.framework.body;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.io.entity.AbstractHttpEntity;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The entity of a region of a file, e.g. a byte range. The region is read with positioned reads, and the classic
+ * server sends it from the file to the socket without copying it through the heap.
+ */
+public class FileRegionEntity extends AbstractHttpEntity {
+
+    private static final int BUFFER = 8 * 1024;
+
+    private final File mFile;
+    private final long mPosition;
+    private final long mLength;
+
+    public FileRegionEntity(@NonNull File file, long position, long length, @Nullable ContentType contentType) {
+        super(contentType, null);
+        this.mFile = file;
+        this.mPosition = position;
+        this.mLength = length;
+    }
+
+    @NonNull
+    public File getFile() {
+        return mFile;
+    }
+
+    /**
+     * Get the position of the first byte of the region in the file.
+     */
+    public long getPosition() {
+        return mPosition;
+    }
+
+    @Override
+    public long getContentLength() {
+        return mLength;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        FileInputStream stream = new FileInputStream(mFile);
+        try {
+            stream.getChannel().position(mPosition);
+        } catch (IOException e) {
+            stream.close();
+            throw e;
+        }
+        return new BoundedInputStream(stream, mLength);
+    }
+
+    @Override
+    public void writeTo(OutputStream outStream) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "r")) {
+            FileChannel channel = file.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BUFFER, Math.max(mLength, 1)));
+            long written = 0;
+            while (written < mLength) {
+                buffer.clear();
+                if (mLength - written < buffer.capacity()) {
+                    buffer.limit((int) (mLength - written));
+                }
+                int count = channel.read(buffer, mPosition + written);
+                if (count < 0) {
+                    throw new IOException("The file is shorter than the region.");
+                }
+                outStream.write(buffer.array(), 0, count);
+                written += count;
+            }
+        }
+        outStream.flush();
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,324 @@
+/*
+ * Copyright (C) 2022 ISNing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.andserver.framework.body;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.yanzhenjie.andserver.http.ResponseBody;
+import com.yanzhenjie.andserver.util.IOUtils;
+import com.yanzhenjie.andserver.util.ContentTypes;
+import com.yanzhenjie.andserver.util.MediaType;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.entity.AbstractHttpEntity;
+import org.apache.hc.core5.http.nio.AsyncEntityProducer;
+import org.apache.hc.core5.http.nio.DataStreamChannel;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses another body with gzip while it is written, the length of the compressed body is unknown so it is sent
+ * chunked.
+ */
+public class GzipBody implements ResponseBody {
+
+    public static final String ENCODING = "gzip";
+
+    private static final int BUFFER = 8 * 1024;
+
+    private final ResponseBody mBody;
+
+    public GzipBody(ResponseBody body) {
+        if (body == null) {
+            throw new IllegalArgumentException("The body cannot be null.");
+        }
+        this.mBody = body;
+    }
+
+    public String getContentType() {
+        MediaType mimeType = this.getContentTypeMedia();
+        if (mimeType == null) {
+            return null;
+        }
+        return mimeType.toString();
+    }
+
+    @Nullable
+    @Override
+    public MediaType getContentTypeMedia() {
+        return mBody.getContentTypeMedia();
+    }
+
+    @NonNull
+    @Override
+    public AsyncEntityProducer toEntityProducer() {
+        return new GzipEntityProducer(mBody.toEntity(), getContentType());
+    }
+
+    @NonNull
+    @Override
+    public HttpEntity toEntity() {
+        return new GzipEntity(mBody.toEntity(), ContentTypes.valueOf(getContentTypeMedia()));
+    }
+
+    private static class GzipEntity extends AbstractHttpEntity {
+
+        private final HttpEntity mEntity;
+
+        private GzipEntity(HttpEntity entity, ContentType contentType) {
+            super(contentType, ENCODING, true);
+            this.mEntity = entity;
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return mEntity.isRepeatable();
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            return new GzipInputStream(mEntity.getContent());
+        }
+
+        @Override
+        public void writeTo(OutputStream outStream) throws IOException {
+            // The connection closes its own stream, the gzip stream is closed to release the deflater only.
+            OutputStream target = new FilterOutputStream(outStream) {
+                @Override
+                public void write(@NonNull byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            };
+            GZIPOutputStream gzipStream = new GZIPOutputStream(target, BUFFER);
+            try {
+                mEntity.writeTo(gzipStream);
+            } finally {
+                gzipStream.close();
+            }
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return mEntity.isStreaming();
+        }
+
+        @Override
+        public void close() throws IOException {
+            mEntity.close();
+        }
+    }
+
+    /**
+     * Reads the compressed source a chunk at a time, a chunk is only read after the channel has taken the previous
+     * one.
+     */
+    private static class GzipEntityProducer implements AsyncEntityProducer {
+
+        private final HttpEntity mEntity;
+        private final String mContentType;
+
+        private final ByteBuffer mOutput = ByteBuffer.allocate(BUFFER);
+
+        private InputStream mStream;
+
+        private GzipEntityProducer(HttpEntity entity, String contentType) {
+            this.mEntity = entity;
+            this.mContentType = contentType;
+            mOutput.flip();
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return false;
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public String getContentType() {
+            return mContentType;
+        }
+
+        @Override
+        public String getContentEncoding() {
+            return ENCODING;
+        }
+
+        @Override
+        public boolean isChunked() {
+            return true;
+        }
+
+        @Override
+        public Set<String> getTrailerNames() {
+            return null;
+        }
+
+        @Override
+        public int available() {
+            return mOutput.hasRemaining() ? mOutput.remaining() : BUFFER;
+        }
+
+        @Override
+        public void produce(DataStreamChannel channel) throws IOException {
+            while (true) {
+                if (mOutput.hasRemaining()) {
+                    channel.write(mOutput);
+                    if (mOutput.hasRemaining()) {
+                        return;
+                    }
+                }
+                if (mStream == null) {
+                    mStream = new GzipInputStream(mEntity.getContent());
+                }
+                int count = mStream.read(mOutput.array());
+                if (count < 0) {
+                    channel.endStream();
+                    releaseResources();
+                    return;
+                }
+                mOutput.clear();
+                mOutput.limit(count);
+            }
+        }
+
+        @Override
+        public void failed(Exception cause) {
+        }
+
+        @Override
+        public void releaseResources() {
+            IOUtils.closeQuietly(mStream);
+            mStream = null;
+        }
+    }
+
+    /**
+     * Deflates the source a chunk at a time while it is read, a chunk of the source is only read after the previous
+     * one has been taken by the reader.
+     */
+    private static class GzipInputStream extends InputStream {
+
+        private static final byte[] HEADER = {0x1F, (byte) 0x8B, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xFF};
+
+        private final InputStream mSource;
+
+        private final Deflater mDeflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        private final CRC32 mCrc = new CRC32();
+        private final byte[] mInput = new byte[BUFFER];
+        private final ByteBuffer mOutput = ByteBuffer.allocate(BUFFER);
+
+        private boolean isTrailerWritten;
+
+        private GzipInputStream(InputStream source) {
+            this.mSource = source;
+            mOutput.put(HEADER);
+            mOutput.flip();
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(@NonNull byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (!mOutput.hasRemaining()) {
+                if (isTrailerWritten) {
+                    return -1;
+                }
+                fill();
+            }
+            int count = Math.min(len, mOutput.remaining());
+            mOutput.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return mOutput.remaining();
+        }
+
+        private void fill() throws IOException {
+            mOutput.clear();
+            byte[] output = mOutput.array();
+            while (mOutput.position() == 0) {
+                if (mDeflater.needsInput() && !mDeflater.finished()) {
+                    int count = mSource.read(mInput);
+                    if (count < 0) {
+                        mDeflater.finish();
+                    } else {
+                        mCrc.update(mInput, 0, count);
+                        mDeflater.setInput(mInput, 0, count);
+                    }
+                }
+
+                int count = mDeflater.deflate(output, 0, output.length);
+                mOutput.position(count);
+                if (mDeflater.finished() && count < output.length - 8) {
+                    writeInt((int) mCrc.getValue());
+                    writeInt((int) mDeflater.getBytesRead());
+                    isTrailerWritten = true;
+                    break;
+                }
+            }
+            mOutput.flip();
+        }
+
+        private void writeInt(int value) {
+            mOutput.put((byte) value);
+            mOutput.put((byte) (value >> 8));
+            mOutput.put((byte) (value >> 16));
+            mOutput.put((byte) (value >> 24));
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                mSource.close();
+            } finally {
+                mDeflater.end();
+            }
+        }
+    }
+}
@@ -20,9 +20,10 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.yanzhenjie.andserver.http.ResponseBody;
+import com.yanzhenjie.andserver.util.BufferPool;
+import com.yanzhenjie.andserver.util.ContentTypes;
 import com.yanzhenjie.andserver.util.MediaType;
 
-import org.apache.hc.core5.http.ContentType;
 import org.apache.hc.core5.http.HttpEntity;
 import org.apache.hc.core5.http.io.entity.InputStreamEntity;
 import org.apache.hc.core5.http.nio.AsyncEntityProducer;
@@ -40,6 +41,7 @@ import java.util.Set;
 public class StreamBody implements ResponseBody {
 
     private static final int BUFFER = 8 * 1024;
+    private static final BufferPool POOL = new BufferPool(BUFFER, 64, false);
 
     HttpEntity entity;
 
@@ -68,77 +70,14 @@ public class StreamBody implements ResponseBody {
     @NonNull
     @Override
     public AsyncEntityProducer toEntityProducer() {
-        return new AsyncEntityProducer() {
-            @Override
-            public boolean isRepeatable() {
-                return false;
-            }
-
-            @Override
-            public void failed(Exception cause) {
-
-            }
-
-            @Override
-            public long getContentLength() {
-                return StreamBody.this.getContentLength();
-            }
-
-            @Override
-            public String getContentType() {
-                return StreamBody.this.getContentType();
-            }
-
-            @Override
-            public String getContentEncoding() {
-                return null;
-            }
-
-            @Override
-            public boolean isChunked() {
-                return false;
-            }
-
-            @Override
-            public Set<String> getTrailerNames() {
-                return null;
-            }
-
-            @Override
-            public int available() {
-                try {
-                    return mStream.available();
-                } catch (IOException e) {
-                    e.printStackTrace(System.err);
-                    return 0;
-                }
-            }
-
-            @Override
-            public void produce(DataStreamChannel channel) throws IOException {
-                byte[] buf = new byte[BUFFER];
-                while (mStream.read(buf) != -1) {
-                    channel.write(ByteBuffer.wrap(buf));
-                }
-                channel.endStream();
-                releaseResources();
-            }
-
-            @Override
-            public void releaseResources() {
-                try {
-                    mStream.close();
-                } catch (IOException e) {
-                    e.printStackTrace(System.err);
-                }
-            }
-        };
+        return new StreamEntityProducer(mStream, getContentLength(), getContentType());
     }
 
     @NonNull
     @Override
     public HttpEntity toEntity() {
-        return new InputStreamEntity(mStream, this.getContentLength(), ContentType.parse(getContentType()));
+        long length = getContentLength();
+        return new InputStreamEntity(mStream, length > 0 ? length : -1, ContentTypes.valueOf(getContentTypeMedia()));
     }
 
     public long getContentLength() {
@@ -166,4 +105,136 @@ public class StreamBody implements ResponseBody {
     public MediaType getContentTypeMedia() {
         return mMediaType;
     }
-}
\ No newline at end of file
+
+    /**
+     * Reads the stream a chunk at a time into a pooled buffer. A chunk is only read after the channel has taken the
+     * previous one, and the reactor is given back after a few chunks, so a large stream is sent with constant memory
+     * and does not hold up the other connections.
+     */
+    private static class StreamEntityProducer implements AsyncEntityProducer {
+
+        private static final int MAX_CHUNKS = 4;
+
+        private final InputStream mStream;
+        private final long mLength;
+        private final String mContentType;
+
+        private ByteBuffer mBuffer;
+        private long mRead;
+        private boolean isEnd;
+
+        private StreamEntityProducer(InputStream stream, long length, String contentType) {
+            this.mStream = stream;
+            this.mLength = length > 0 ? length : -1;
+            this.mContentType = contentType;
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return false;
+        }
+
+        @Override
+        public long getContentLength() {
+            return mLength;
+        }
+
+        @Override
+        public String getContentType() {
+            return mContentType;
+        }
+
+        @Override
+        public String getContentEncoding() {
+            return null;
+        }
+
+        @Override
+        public boolean isChunked() {
+            return mLength < 0;
+        }
+
+        @Override
+        public Set<String> getTrailerNames() {
+            return null;
+        }
+
+        @Override
+        public int available() {
+            if (mBuffer != null && mBuffer.hasRemaining()) {
+                return mBuffer.remaining();
+            }
+            try {
+                return Math.max(mStream.available(), 1);
+            } catch (IOException e) {
+                return 1;
+            }
+        }
+
+        @Override
+        public void produce(DataStreamChannel channel) throws IOException {
+            if (mBuffer == null) {
+                mBuffer = POOL.acquire();
+                mBuffer.flip();
+            }
+
+            for (int chunks = 0; ; ) {
+                if (mBuffer.hasRemaining()) {
+                    channel.write(mBuffer);
+                    if (mBuffer.hasRemaining()) {
+                        // The channel is full, it calls back when it can take more.
+                        return;
+                    }
+                }
+                if (isEnd) {
+                    channel.endStream();
+                    releaseResources();
+                    return;
+                }
+                if (chunks++ == MAX_CHUNKS) {
+                    channel.requestOutput();
+                    return;
+                }
+                fill();
+            }
+        }
+
+        private void fill() throws IOException {
+            mBuffer.clear();
+            if (mLength >= 0 && mLength - mRead < mBuffer.capacity()) {
+                mBuffer.limit((int) (mLength - mRead));
+            }
+            int count = mBuffer.hasRemaining() ? mStream.read(mBuffer.array(), 0, mBuffer.limit()) : 0;
+            if (count < 0) {
+                if (mLength >= 0) {
+                    throw new IOException("The stream is shorter than its content length.");
+                }
+                count = 0;
+                isEnd = true;
+            }
+            mRead += count;
+            if (mRead == mLength) {
+                isEnd = true;
+            }
+            mBuffer.position(count);
+            mBuffer.flip();
+        }
+
+        @Override
+        public void failed(Exception cause) {
+        }
+
+        @Override
+        public void releaseResources() {
+            try {
+                mStream.close();
+            } catch (IOException e) {
+                e.printStackTrace(System.err);
+            }
+            if (mBuffer != null) {
+                POOL.release(mBuffer);
+                mBuffer = null;
+            }
+        }
+    }
+}
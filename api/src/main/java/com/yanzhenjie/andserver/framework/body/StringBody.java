@@ -22,14 +22,10 @@ import androidx.annotation.Nullable;
 import com.yanzhenjie.andserver.http.ResponseBody;
 import com.yanzhenjie.andserver.util.MediaType;
 
-import org.apache.commons.io.Charsets;
-import org.apache.hc.core5.http.ContentType;
 import org.apache.hc.core5.http.HttpEntity;
-import org.apache.hc.core5.http.io.entity.StringEntity;
 import org.apache.hc.core5.http.nio.AsyncEntityProducer;
-import org.apache.hc.core5.http.nio.entity.StringAsyncEntityProducer;
 
-import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Created by Zhenjie Yan on 2018/8/6.
@@ -37,7 +33,12 @@ import java.nio.charset.Charset;
 public class StringBody implements ResponseBody {
 
     private final String mBody;
-    private MediaType mMediaType;
+    private final MediaType mMediaType;
+
+    /**
+     * The bytes of the body, it is encoded at the first time the body is sent and reused by the later entities.
+     */
+    private volatile BytesBody mEncoded;
 
     public StringBody(String body) {
         this(body, MediaType.TEXT_PLAIN);
@@ -48,14 +49,14 @@ public class StringBody implements ResponseBody {
             throw new IllegalArgumentException("The content cannot be null.");
         }
 
-        this.mMediaType = mediaType;
-        if (mMediaType == null) {
-            mMediaType = new MediaType(MediaType.TEXT_PLAIN, Charsets.toCharset("utf-8"));
-        }
-
+        this.mMediaType = withCharset(mediaType);
         this.mBody = body;
     }
 
+    public long getContentLength() {
+        return encoded().getContentLength();
+    }
+
     public String getContentType() {
         MediaType mimeType = this.getContentTypeMedia();
         if (mimeType == null) {
@@ -67,23 +68,41 @@ public class StringBody implements ResponseBody {
     @Nullable
     @Override
     public MediaType getContentTypeMedia() {
-        Charset charset = mMediaType.getCharset();
-        if (charset == null) {
-            charset = Charsets.toCharset("utf-8");
-            return new MediaType(mMediaType.getType(), mMediaType.getSubtype(), charset);
-        }
         return mMediaType;
     }
 
     @NonNull
     @Override
     public AsyncEntityProducer toEntityProducer() {
-        return new StringAsyncEntityProducer(mBody, ContentType.parse(getContentType()));
+        return encoded().toEntityProducer();
     }
 
     @NonNull
     @Override
     public HttpEntity toEntity() {
-        return new StringEntity(mBody, ContentType.parse(getContentType()));
+        return encoded().toEntity();
+    }
+
+    private BytesBody encoded() {
+        BytesBody encoded = mEncoded;
+        if (encoded == null) {
+            encoded = new BytesBody(mBody, getContentTypeMedia());
+            mEncoded = encoded;
+        }
+        return encoded;
+    }
+
+    /**
+     * Get the media type with a charset, the text is encoded with UTF-8 if the media type has no charset.
+     */
+    @NonNull
+    static MediaType withCharset(@Nullable MediaType mediaType) {
+        if (mediaType == null) {
+            return new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8);
+        }
+        if (mediaType.getCharset() == null) {
+            return new MediaType(mediaType.getType(), mediaType.getSubtype(), StandardCharsets.UTF_8);
+        }
+        return mediaType;
     }
-}
\ No newline at end of file
+}
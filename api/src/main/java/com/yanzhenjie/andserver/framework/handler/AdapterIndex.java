@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2022 ISNing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.andserver.framework.handler;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.yanzhenjie.andserver.framework.mapping.Mapping;
+import com.yanzhenjie.andserver.framework.mapping.Router;
+import com.yanzhenjie.andserver.http.HttpRequest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One route index of the mappings of all the {@link MappingAdapter}s, it finds the adapter of a request with a single
+ * lookup. The other adapters, such as websites, are kept in the registered order to be asked when the index misses.
+ */
+public class AdapterIndex {
+
+    private final Router mRouter = new Router();
+    private final Map<Mapping, MappingAdapter> mOwners = new HashMap<>();
+    private final List<HandlerAdapter> mFallbacks = new ArrayList<>();
+
+    public AdapterIndex(@NonNull List<HandlerAdapter> adapters) {
+        for (HandlerAdapter adapter: adapters) {
+            if (adapter instanceof MappingAdapter) {
+                MappingAdapter mappingAdapter = (MappingAdapter) adapter;
+                for (Mapping mapping: mappingAdapter.getMappingMap().keySet()) {
+                    mRouter.addMapping(mapping);
+                    mOwners.put(mapping, mappingAdapter);
+                }
+            } else {
+                mFallbacks.add(adapter);
+            }
+        }
+    }
+
+    /**
+     * Find the adapter which owns the route of the request. The routes of the adapter are kept on the request, so the
+     * adapter does not match the path again.
+     *
+     * @param request current request.
+     *
+     * @return the adapter, or {@code null} if no mapping matches the path of the request.
+     */
+    @Nullable
+    public MappingAdapter find(@NonNull HttpRequest request) {
+        Router.Match match = mRouter.match(request.getPathSegments());
+        if (match.isEmpty()) {
+            return null;
+        }
+
+        Router.Route route = match.getRoute(request.getMethod());
+        if (route == null) {
+            route = match.getRoutes().get(0);
+        }
+        MappingAdapter owner = mOwners.get(route.getMapping());
+        owner.setMatch(request, match.retain(owner.getMappingMap().keySet()));
+        return owner;
+    }
+
+    /**
+     * Get the adapters which are not indexed, in the registered order.
+     */
+    @NonNull
+    public List<HandlerAdapter> getFallbacks() {
+        return Collections.unmodifiableList(mFallbacks);
+    }
+}
@@ -15,29 +15,19 @@
  */
 package com.yanzhenjie.andserver.framework.handler;
 
-import android.text.TextUtils;
-
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import com.yanzhenjie.andserver.error.ContentNotAcceptableException;
-import com.yanzhenjie.andserver.error.ContentNotSupportedException;
-import com.yanzhenjie.andserver.error.HeaderValidateException;
 import com.yanzhenjie.andserver.error.MethodNotSupportException;
-import com.yanzhenjie.andserver.error.ParamValidateException;
+import com.yanzhenjie.andserver.framework.mapping.Condition;
 import com.yanzhenjie.andserver.framework.mapping.Mapping;
-import com.yanzhenjie.andserver.framework.mapping.Mime;
-import com.yanzhenjie.andserver.framework.mapping.Pair;
-import com.yanzhenjie.andserver.framework.mapping.Path;
-import com.yanzhenjie.andserver.http.Header;
+import com.yanzhenjie.andserver.framework.mapping.Router;
 import com.yanzhenjie.andserver.http.HttpContext;
 import com.yanzhenjie.andserver.http.HttpMethod;
 import com.yanzhenjie.andserver.http.HttpRequest;
-import com.yanzhenjie.andserver.util.MediaType;
+import com.yanzhenjie.andserver.util.PathSegments;
 import com.yanzhenjie.andserver.util.Patterns;
 
-import org.apache.commons.lang3.StringUtils;
-
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -47,15 +37,12 @@ import java.util.Map;
  */
 public abstract class MappingAdapter implements HandlerAdapter, Patterns {
 
+    private volatile Router mRouter;
+
     @Override
     public boolean intercept(@NonNull HttpRequest request) {
-        List<Path.Segment> pathSegments = Path.pathToList(request.getPath());
-
-        List<Mapping> mappings = getExactMappings(pathSegments);
-        if (mappings.isEmpty()) {
-            mappings = getBlurredMappings(pathSegments);
-        }
-        if (mappings.isEmpty()) {
+        Router.Match match = match(request);
+        if (match.isEmpty()) {
             return false;
         }
 
@@ -64,245 +51,97 @@ public abstract class MappingAdapter implements HandlerAdapter, Patterns {
             return true;
         }
 
-        Mapping mapping = MappingAdapter.findMappingByMethod(mappings, method);
-        if (mapping == null) {
+        Router.Route route = match.getRoute(method);
+        if (route == null) {
             MethodNotSupportException exception = new MethodNotSupportException(method);
-            List<HttpMethod> methods = MappingAdapter.findSupportMethods(mappings);
+            List<HttpMethod> methods = MappingAdapter.findSupportMethods(match.getMappings());
             exception.setMethods(methods);
             throw exception;
         }
 
-        Pair param = mapping.getParam();
-        if (param != null) {
-            validateParams(param, request);
-        }
-
-        Pair header = mapping.getHeader();
-        if (header != null) {
-            validateHeaders(header, request);
-        }
-
-        Mime consume = mapping.getConsume();
-        if (consume != null) {
-            validateConsume(consume, request);
-        }
-
-        Mime produce = mapping.getProduce();
-        if (produce != null) {
-            validateProduce(produce, request);
-        }
-
+        route.getCondition().validate(request);
         return true;
     }
 
     @Nullable
     @Override
     public RequestHandler getHandler(@NonNull HttpRequest request) {
-        List<Path.Segment> pathSegments = Path.pathToList(request.getPath());
-
-        List<Mapping> mappings = getExactMappings(pathSegments);
-        if (mappings.isEmpty()) {
-            mappings = getBlurredMappings(pathSegments);
-        }
+        Router.Match match = match(request);
 
         HttpMethod method = request.getMethod();
-        Mapping mapping = MappingAdapter.findMappingByMethod(mappings, method);
+        Router.Route route = match.getRoute(method);
 
-        if (method.equals(HttpMethod.OPTIONS) && mapping == null) {
-            return new OptionsHandler(request, mappings, getMappingMap());
+        if (method.equals(HttpMethod.OPTIONS) && route == null) {
+            return new OptionsHandler(request, match.getMappings(), getMappingMap());
         }
 
-        if (mapping == null) {
+        if (route == null) {
             return null;
         }
 
-        Mime mime = mapping.getProduce();
-        if (mime != null) {
-            List<Mime.Rule> produces = mime.getRuleList();
-            MediaType mediaType = null;
-            for (Mime.Rule produce: produces) {
-                String text = produce.toString();
-                if (!text.startsWith("!")) {
-                    mediaType = produce;
-                    break;
-                }
-            }
-            request.setAttribute(HttpContext.RESPONSE_PRODUCE_TYPE, mediaType);
-        }
-
-        return getMappingMap().get(mapping);
-    }
-
-    private List<Mapping> getExactMappings(List<Path.Segment> httpSegments) {
-        List<Mapping> mappings = new ArrayList<>();
-
-        Map<Mapping, RequestHandler> mappingMap = getMappingMap();
-        for (Mapping mapping: mappingMap.keySet()) {
-            Path path = mapping.getPath();
-            List<Path.Rule> rules = path.getRuleList();
-            for (Path.Rule rule: rules) {
-                if (matchExactPath(rule.getSegments(), httpSegments)) {
-                    mappings.add(mapping);
-                }
-            }
-        }
-        return mappings;
-    }
+        request.setAttribute(HttpContext.REQUEST_ROUTE_RESULT, match.select(route));
 
-    private boolean matchExactPath(List<Path.Segment> segments, List<Path.Segment> httpSegments) {
-        if (httpSegments.size() != segments.size()) {
-            return false;
+        Condition condition = route.getCondition();
+        if (condition.hasProduce()) {
+            request.setAttribute(HttpContext.RESPONSE_PRODUCE_TYPE, condition.getProduceType());
         }
 
-        return Path.listToPath(segments).equals(Path.listToPath(httpSegments));
+        return getMappingMap().get(route.getMapping());
     }
 
-    private List<Mapping> getBlurredMappings(List<Path.Segment> httpSegments) {
-        List<Mapping> mappings = new ArrayList<>();
-
-        Map<Mapping, RequestHandler> mappingMap = getMappingMap();
-        for (Mapping mapping: mappingMap.keySet()) {
-            Path path = mapping.getPath();
-            List<Path.Rule> rules = path.getRuleList();
-            for (Path.Rule rule: rules) {
-                if (matchBlurredPath(rule.getSegments(), httpSegments)) {
-                    mappings.add(mapping);
-                }
+    /**
+     * Get the routes of the request path. The match is kept on the request, so the path is matched once for both
+     * {@link #intercept(HttpRequest)} and {@link #getHandler(HttpRequest)}, or not at all if an {@link AdapterIndex}
+     * has matched it for this adapter.
+     *
+     * @param request current request.
+     *
+     * @return the result of the matching, never null.
+     */
+    @NonNull
+    protected Router.Match match(@NonNull HttpRequest request) {
+        PathSegments segments = request.getPathSegments();
+        Object object = request.getAttribute(HttpContext.REQUEST_ROUTE_MATCH);
+        if (object instanceof AdapterMatch) {
+            AdapterMatch adapterMatch = (AdapterMatch) object;
+            // The path of a forwarded request is changed, so are its segments.
+            if (adapterMatch.mAdapter == this && adapterMatch.mSegments == segments) {
+                return adapterMatch.mMatch;
             }
         }
-        return mappings;
-    }
-
-    private boolean matchBlurredPath(List<Path.Segment> segments, List<Path.Segment> httpSegments) {
-        if (httpSegments.size() != segments.size()) {
-            return false;
-        }
 
-        for (int i = 0; i < segments.size(); i++) {
-            Path.Segment segment = segments.get(i);
-            if (!segment.equals(httpSegments.get(i)) && !segment.isBlurred()) {
-                return false;
-            }
-        }
-        return true;
+        Router.Match match = getRouter().match(segments);
+        setMatch(request, match);
+        return match;
     }
 
-    private void validateParams(Pair param, HttpRequest request) {
-        List<Pair.Rule> rules = param.getRuleList();
-        for (Pair.Rule rule: rules) {
-            String key = rule.getKey();
-            List<String> keys = request.getParameterNames();
-            String value = rule.getValue();
-            List<String> values = request.getParameters(key);
-            if (rule.isNoKey()) {
-                if (keys.contains(key)) {
-                    throw new ParamValidateException(String.format("The parameter [%s] is not allowed.", key));
-                }
-            } else if (rule.isNoValue()) {
-                if (values.contains(value)) {
-                    throw new ParamValidateException(
-                        String.format("The value of parameter %s cannot be %s.", key, value));
-                }
-            } else if (!TextUtils.isEmpty(key) && !TextUtils.isEmpty(value)) {
-                if (!keys.contains(key) || !values.contains(value)) {
-                    throw new ParamValidateException(
-                        String.format("The value of parameter %s is missing or wrong.", key));
-                }
-            } else if (!TextUtils.isEmpty(key) && TextUtils.isEmpty(value)) {
-                if (!keys.contains(key)) {
-                    throw new ParamValidateException(String.format("The parameter %s is missing.", key));
-                }
-            }
-        }
+    /**
+     * Keep the match of the request path for this adapter.
+     */
+    void setMatch(@NonNull HttpRequest request, @NonNull Router.Match match) {
+        request.setAttribute(HttpContext.REQUEST_ROUTE_MATCH,
+            new AdapterMatch(this, request.getPathSegments(), match));
     }
 
-    private void validateHeaders(Pair header, HttpRequest request) {
-        List<Pair.Rule> rules = header.getRuleList();
-        for (Pair.Rule rule: rules) {
-            String key = rule.getKey();
-            List<Header> allHeaders = request.getHeaders();
-            String value = rule.getValue();
-            List<Header> headersWithKey = request.getHeaders(key);
-            if (rule.isNoKey()) {
-                for (Header h : allHeaders)
-                    if (h.getName().equals(key)) {
-                        throw new HeaderValidateException(String.format("The header [%s] is not allowed.", key));
-                    }
-            } else if (rule.isNoValue()) {
-                for (Header h : headersWithKey)
-                    if (StringUtils.equals(value, h.getValue())) {
-                        throw new HeaderValidateException(
-                                String.format("The value of header %s cannot be %s.", key, value));
+    /**
+     * Get the router of all the mappings, it is built on first use.
+     *
+     * @return the router.
+     */
+    @NonNull
+    protected Router getRouter() {
+        if (mRouter == null) {
+            synchronized (this) {
+                if (mRouter == null) {
+                    Router router = new Router();
+                    for (Mapping mapping: getMappingMap().keySet()) {
+                        router.addMapping(mapping);
                     }
-            } else p1:if (!StringUtils.isEmpty(key) && !StringUtils.isEmpty(value)) {
-                for (Header h : headersWithKey)
-                    if (StringUtils.equals(value, h.getValue())) break p1;
-                throw new HeaderValidateException(String.format("The value of header %s is missing or wrong.", key));
-            } else p2:if (!StringUtils.isEmpty(key) && StringUtils.isEmpty(value)) {
-                for (Header h : allHeaders) if (h.getName().equals(key)) break p2;
-                throw new HeaderValidateException(String.format("The header %s is missing.", key));
-            }
-        }
-    }
-
-    private void validateConsume(Mime mime, HttpRequest request) {
-        List<Mime.Rule> rules = mime.getRuleList();
-        MediaType contentType = request.getContentType();
-
-        List<MediaType> includeType = new ArrayList<>();
-        for (Mime.Rule rule: rules) {
-            String type = rule.getType();
-            boolean nonContent = type.startsWith("!");
-            if (nonContent) {
-                type = type.substring(1);
-            }
-            MediaType consume = new MediaType(type, rule.getSubtype());
-
-            if (nonContent) {
-                if (consume.equalsExcludeParameter(contentType)) {
-                    throw new ContentNotSupportedException(contentType);
+                    mRouter = router;
                 }
-            } else {
-                includeType.add(consume);
-            }
-        }
-
-        boolean included = false;
-        for (MediaType mediaType: includeType) {
-            if (mediaType.includes(contentType)) {
-                included = true;
-                break;
-            }
-        }
-        if (!included) {
-            throw new ContentNotSupportedException(contentType);
-        }
-    }
-
-    private void validateProduce(Mime mime, HttpRequest request) {
-        List<Mime.Rule> rules = mime.getRuleList();
-        List<MediaType> accepts = request.getAccepts();
-        for (Mime.Rule rule: rules) {
-            String type = rule.getType();
-            boolean nonContent = type.startsWith("!");
-            if (nonContent) {
-                type = type.substring(1);
-            }
-            MediaType produce = new MediaType(type, rule.getSubtype());
-
-            boolean exclude = false;
-            for (MediaType accept: accepts) {
-                if (accept.includes(produce)) {
-                    exclude = true;
-                }
-            }
-            if (nonContent && exclude) {
-                throw new ContentNotAcceptableException();
-            }
-            if (!nonContent && !exclude) {
-                throw new ContentNotAcceptableException();
             }
         }
+        return mRouter;
     }
 
     /**
@@ -321,6 +160,19 @@ public abstract class MappingAdapter implements HandlerAdapter, Patterns {
     @NonNull
     protected abstract Object getHost();
 
+    private static class AdapterMatch {
+
+        private final MappingAdapter mAdapter;
+        private final PathSegments mSegments;
+        private final Router.Match mMatch;
+
+        private AdapterMatch(MappingAdapter adapter, PathSegments segments, Router.Match match) {
+            this.mAdapter = adapter;
+            this.mSegments = segments;
+            this.mMatch = match;
+        }
+    }
+
     public static List<HttpMethod> findSupportMethods(List<Mapping> mappings) {
         List<HttpMethod> methods = new ArrayList<>();
         for (Mapping child: mappings) {
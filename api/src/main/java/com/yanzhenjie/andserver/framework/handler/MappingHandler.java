@@ -27,9 +27,11 @@ import com.yanzhenjie.andserver.framework.cross.CrossOrigin;
 import com.yanzhenjie.andserver.framework.mapping.Addition;
 import com.yanzhenjie.andserver.framework.mapping.Mapping;
 import com.yanzhenjie.andserver.framework.mapping.Path;
+import com.yanzhenjie.andserver.framework.mapping.Router;
 import com.yanzhenjie.andserver.framework.view.BodyView;
 import com.yanzhenjie.andserver.framework.view.View;
 import com.yanzhenjie.andserver.http.Header;
+import com.yanzhenjie.andserver.http.HttpContext;
 import com.yanzhenjie.andserver.http.HttpHeaders;
 import com.yanzhenjie.andserver.http.HttpMethod;
 import com.yanzhenjie.andserver.http.HttpRequest;
@@ -103,6 +105,24 @@ public abstract class MappingHandler implements MethodHandler {
         return mHost;
     }
 
+    /**
+     * Get the value of a path variable from the route result which was saved on the request when this handler was
+     * selected, the path of the request is matched again only if there is no such result.
+     *
+     * @param request current request.
+     * @param name the name of the variable.
+     *
+     * @return the value, or {@code null} if the path has no such variable.
+     */
+    @Nullable
+    protected String getPathVariable(@NonNull HttpRequest request, @NonNull String name) {
+        Object result = request.getAttribute(HttpContext.REQUEST_ROUTE_RESULT);
+        if (result instanceof Router.Result && ((Router.Result) result).getMapping() == mMapping) {
+            return ((Router.Result) result).getPathVariable(name);
+        }
+        return getPathVariable(request.getPath()).get(name);
+    }
+
     /**
      * Get the path to match the request.
      *
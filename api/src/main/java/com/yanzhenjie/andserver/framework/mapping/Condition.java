@@ -0,0 +1,324 @@
+/*
+ * Copyright (C) 2022 ISNing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.andserver.framework.mapping;
+
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.yanzhenjie.andserver.error.ContentNotAcceptableException;
+import com.yanzhenjie.andserver.error.ContentNotSupportedException;
+import com.yanzhenjie.andserver.error.HeaderValidateException;
+import com.yanzhenjie.andserver.error.ParamValidateException;
+import com.yanzhenjie.andserver.http.Header;
+import com.yanzhenjie.andserver.http.HttpHeaders;
+import com.yanzhenjie.andserver.http.HttpRequest;
+import com.yanzhenjie.andserver.util.MediaType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The params, headers, consumes and produces of a {@link Mapping}, compiled once when the mapping is routed. The media
+ * types are built and the {@code "!"} prefixes are resolved up front, so validating a request does not parse the rules
+ * again.
+ */
+public class Condition {
+
+    /**
+     * The max number of {@code Accept} values whose negotiation result is remembered.
+     */
+    private static final int MAX_NEGOTIATIONS = 64;
+
+    private static final int KEY = 0;
+    private static final int KEY_VALUE = 1;
+    private static final int NO_KEY = 2;
+    private static final int NO_VALUE = 3;
+
+    private final PairRule[] mParams;
+    private final PairRule[] mHeaders;
+
+    private final MediaType[] mConsumeIncludes;
+    private final MediaType[] mConsumeExcludes;
+
+    private final MediaType[] mProduces;
+    private final boolean[] mProduceExcludes;
+    private final MediaType mProduceType;
+    private final Map<String, Boolean> mNegotiations;
+
+    public Condition(@NonNull Mapping mapping) {
+        this.mParams = compile(mapping.getParam());
+        this.mHeaders = compile(mapping.getHeader());
+
+        Mime consume = mapping.getConsume();
+        if (consume != null) {
+            List<MediaType> includes = new ArrayList<>();
+            List<MediaType> excludes = new ArrayList<>();
+            for (Mime.Rule rule: consume.getRuleList()) {
+                String type = rule.getType();
+                if (type.startsWith("!")) {
+                    excludes.add(new MediaType(type.substring(1), rule.getSubtype()));
+                } else {
+                    includes.add(new MediaType(type, rule.getSubtype()));
+                }
+            }
+            this.mConsumeIncludes = includes.toArray(new MediaType[0]);
+            this.mConsumeExcludes = excludes.toArray(new MediaType[0]);
+        } else {
+            this.mConsumeIncludes = null;
+            this.mConsumeExcludes = null;
+        }
+
+        Mime produce = mapping.getProduce();
+        if (produce != null) {
+            List<Mime.Rule> rules = produce.getRuleList();
+            MediaType produceType = null;
+            this.mProduces = new MediaType[rules.size()];
+            this.mProduceExcludes = new boolean[rules.size()];
+            for (int i = 0; i < rules.size(); i++) {
+                Mime.Rule rule = rules.get(i);
+                String type = rule.getType();
+                mProduceExcludes[i] = type.startsWith("!");
+                mProduces[i] = new MediaType(mProduceExcludes[i] ? type.substring(1) : type, rule.getSubtype());
+                if (produceType == null && !mProduceExcludes[i]) {
+                    produceType = rule;
+                }
+            }
+            this.mProduceType = produceType;
+            this.mNegotiations = new ConcurrentHashMap<>();
+        } else {
+            this.mProduces = null;
+            this.mProduceExcludes = null;
+            this.mProduceType = null;
+            this.mNegotiations = null;
+        }
+    }
+
+    private static PairRule[] compile(Pair pair) {
+        if (pair == null) {
+            return null;
+        }
+
+        List<Pair.Rule> rules = pair.getRuleList();
+        PairRule[] compiled = new PairRule[rules.size()];
+        for (int i = 0; i < rules.size(); i++) {
+            Pair.Rule rule = rules.get(i);
+            int kind;
+            if (rule.isNoKey()) {
+                kind = NO_KEY;
+            } else if (rule.isNoValue()) {
+                kind = NO_VALUE;
+            } else if (!TextUtils.isEmpty(rule.getValue())) {
+                kind = KEY_VALUE;
+            } else {
+                kind = KEY;
+            }
+            compiled[i] = new PairRule(rule.getKey(), rule.getValue(), kind);
+        }
+        return compiled;
+    }
+
+    /**
+     * Whether the mapping declares what it produces.
+     */
+    public boolean hasProduce() {
+        return mProduces != null;
+    }
+
+    /**
+     * Get the type of the response, it is the first produce rule which is not negated.
+     *
+     * @return the type with its parameters, or {@code null} if every produce rule is negated.
+     */
+    @Nullable
+    public MediaType getProduceType() {
+        return mProduceType;
+    }
+
+    /**
+     * Validate the request against all the conditions.
+     *
+     * @param request current request.
+     */
+    public void validate(@NonNull HttpRequest request) {
+        if (mParams != null) {
+            validateParams(request);
+        }
+        if (mHeaders != null) {
+            validateHeaders(request);
+        }
+        if (mConsumeIncludes != null) {
+            validateConsume(request);
+        }
+        if (mProduces != null) {
+            validateProduce(request);
+        }
+    }
+
+    private void validateParams(HttpRequest request) {
+        for (PairRule rule: mParams) {
+            String key = rule.key;
+            if (TextUtils.isEmpty(key)) {
+                continue;
+            }
+
+            List<String> values = request.getParameters(key);
+            switch (rule.kind) {
+                case NO_KEY: {
+                    if (!values.isEmpty()) {
+                        throw new ParamValidateException(String.format("The parameter [%s] is not allowed.", key));
+                    }
+                    break;
+                }
+                case NO_VALUE: {
+                    if (values.contains(rule.value)) {
+                        throw new ParamValidateException(
+                            String.format("The value of parameter %s cannot be %s.", key, rule.value));
+                    }
+                    break;
+                }
+                case KEY_VALUE: {
+                    if (!values.contains(rule.value)) {
+                        throw new ParamValidateException(
+                            String.format("The value of parameter %s is missing or wrong.", key));
+                    }
+                    break;
+                }
+                default: {
+                    if (values.isEmpty()) {
+                        throw new ParamValidateException(String.format("The parameter %s is missing.", key));
+                    }
+                    break;
+                }
+            }
+        }
+    }
+
+    private void validateHeaders(HttpRequest request) {
+        for (PairRule rule: mHeaders) {
+            String key = rule.key;
+            if (TextUtils.isEmpty(key)) {
+                continue;
+            }
+
+            switch (rule.kind) {
+                case NO_KEY: {
+                    if (request.getHeader(key) != null) {
+                        throw new HeaderValidateException(String.format("The header [%s] is not allowed.", key));
+                    }
+                    break;
+                }
+                case NO_VALUE: {
+                    if (containsValue(request, key, rule.value)) {
+                        throw new HeaderValidateException(
+                            String.format("The value of header %s cannot be %s.", key, rule.value));
+                    }
+                    break;
+                }
+                case KEY_VALUE: {
+                    if (!containsValue(request, key, rule.value)) {
+                        throw new HeaderValidateException(
+                            String.format("The value of header %s is missing or wrong.", key));
+                    }
+                    break;
+                }
+                default: {
+                    if (request.getHeader(key) == null) {
+                        throw new HeaderValidateException(String.format("The header %s is missing.", key));
+                    }
+                    break;
+                }
+            }
+        }
+    }
+
+    private static boolean containsValue(HttpRequest request, String key, String value) {
+        for (Header header: request.getHeaders(key)) {
+            if (TextUtils.equals(value, header.getValue())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void validateConsume(HttpRequest request) {
+        MediaType contentType = request.getContentType();
+        for (MediaType exclude: mConsumeExcludes) {
+            if (exclude.equalsExcludeParameter(contentType)) {
+                throw new ContentNotSupportedException(contentType);
+            }
+        }
+        for (MediaType include: mConsumeIncludes) {
+            if (include.includes(contentType)) {
+                return;
+            }
+        }
+        throw new ContentNotSupportedException(contentType);
+    }
+
+    private void validateProduce(HttpRequest request) {
+        String accept = null;
+        List<Header> headers = request.getHeaders(HttpHeaders.ACCEPT);
+        if (headers.isEmpty()) {
+            accept = "";
+        } else if (headers.size() == 1) {
+            accept = headers.get(0).getValue();
+        }
+
+        Boolean acceptable = accept == null ? null : mNegotiations.get(accept);
+        if (acceptable == null) {
+            acceptable = negotiate(request.getAccepts());
+            if (accept != null && mNegotiations.size() < MAX_NEGOTIATIONS) {
+                mNegotiations.put(accept, acceptable);
+            }
+        }
+        if (!acceptable) {
+            throw new ContentNotAcceptableException();
+        }
+    }
+
+    private boolean negotiate(List<MediaType> accepts) {
+        for (int i = 0; i < mProduces.length; i++) {
+            boolean included = false;
+            for (MediaType accept: accepts) {
+                if (accept.includes(mProduces[i])) {
+                    included = true;
+                    break;
+                }
+            }
+            if (included == mProduceExcludes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class PairRule {
+
+        private final String key;
+        private final String value;
+        private final int kind;
+
+        private PairRule(String key, String value, int kind) {
+            this.key = key;
+            this.value = value;
+            this.kind = kind;
+        }
+    }
+}
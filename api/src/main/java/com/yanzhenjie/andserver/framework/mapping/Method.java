@@ -40,4 +40,8 @@ public class Method {
     public void addRule(@NonNull String ruleText) {
         mRuleList.add(HttpMethod.reverse(ruleText));
     }
+
+    public void addRule(@NonNull HttpMethod method) {
+        mRuleList.add(method);
+    }
 }
\ No newline at end of file
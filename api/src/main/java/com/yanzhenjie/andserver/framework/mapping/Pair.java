@@ -16,6 +16,7 @@
 package com.yanzhenjie.andserver.framework.mapping;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.yanzhenjie.andserver.util.Patterns;
 
@@ -65,6 +66,23 @@ public class Pair implements Patterns {
         }
     }
 
+    /**
+     * Add a rule which has been parsed, such as by the annotation processor.
+     *
+     * @param key the key of the rule.
+     * @param value the value of the rule, or {@code null} if the rule only checks the key.
+     * @param noKey the key must not be present.
+     * @param noValue the value must not be equal.
+     */
+    public void addRule(@NonNull String key, @Nullable String value, boolean noKey, boolean noValue) {
+        Rule rule = new Rule();
+        rule.setKey(key);
+        rule.setValue(value);
+        rule.setNoKey(noKey);
+        rule.setNoValue(noValue);
+        mRuleList.add(rule);
+    }
+
     public static class Rule {
 
         private String key;
@@ -21,6 +21,7 @@ import androidx.annotation.NonNull;
 
 import com.yanzhenjie.andserver.util.Patterns;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
@@ -46,6 +47,17 @@ public class Path implements Patterns {
         mRuleList.add(rule);
     }
 
+    /**
+     * Add a rule which has been split into segments, such as by the annotation processor.
+     *
+     * @param segments the segments of the rule.
+     */
+    public void addRule(@NonNull Segment... segments) {
+        Rule rule = new Rule();
+        rule.setSegments(Collections.unmodifiableList(Arrays.asList(segments)));
+        mRuleList.add(rule);
+    }
+
     public static class Rule {
 
         private List<Segment> mSegments;
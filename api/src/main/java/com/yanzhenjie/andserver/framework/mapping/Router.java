@@ -0,0 +1,425 @@
+/*
+ * Copyright (C) 2022 ISNing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.andserver.framework.mapping;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.yanzhenjie.andserver.http.HttpMethod;
+import com.yanzhenjie.andserver.util.PathSegments;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A segment trie of {@link Mapping}s. Static segments are looked up in the children of a node, all blurred segments
+ * of a node, such as {@code {id}}, share the same wildcard edge.
+ *
+ * <p>Like the linear matching it replaces, a path that is matched exactly by static segments wins over the paths
+ * matched by blurred segments, and the routes of a match keep the order in which they were added.
+ *
+ * <p>The nodes of the paths which have no blurred segment are also kept in a table keyed by the whole path, so such
+ * paths are routed by a single lookup. Other paths are walked over {@link PathSegments}, which compares the segments
+ * in place without creating substrings.
+ */
+public class Router {
+
+    private final Node mRoot = new Node();
+    private final Map<String, Node> mStatics = new HashMap<>();
+    private int mCount;
+
+    public Router() {
+    }
+
+    /**
+     * Add all the path rules of the mapping to this router.
+     *
+     * @param mapping the mapping to be routed.
+     */
+    public void addMapping(@NonNull Mapping mapping) {
+        Condition condition = new Condition(mapping);
+        for (Path.Rule rule: mapping.getPath().getRuleList()) {
+            List<Path.Segment> segments = rule.getSegments();
+            String[] variables = new String[segments.size()];
+            boolean isBlurred = false;
+
+            Node node = mRoot;
+            for (int i = 0; i < segments.size(); i++) {
+                Path.Segment segment = segments.get(i);
+                if (segment.isBlurred()) {
+                    String key = segment.getValue();
+                    variables[i] = key.substring(1, key.length() - 1);
+                    isBlurred = true;
+                    node = node.wildcard();
+                } else {
+                    node = node.child(segment.getValue());
+                }
+            }
+            node.add(new Route(mCount++, mapping, condition, isBlurred ? variables : null));
+            if (!isBlurred && !segments.isEmpty()) {
+                mStatics.put(Path.listToPath(segments), node);
+            }
+        }
+    }
+
+    /**
+     * Find the routes of the path.
+     *
+     * @param path the request path.
+     *
+     * @return the result of the matching, never null.
+     */
+    @NonNull
+    public Match match(@NonNull String path) {
+        return match(new PathSegments(path));
+    }
+
+    /**
+     * Find the routes of the path.
+     *
+     * @param segments the segments of the request path.
+     *
+     * @return the result of the matching, never null.
+     */
+    @NonNull
+    public Match match(@NonNull PathSegments segments) {
+        Node node = mStatics.get(segments.getPath());
+        if (node != null) {
+            return new Match(segments, node.mRoutes, node.mMethods);
+        }
+
+        node = mRoot;
+        for (int i = 0; i < segments.size() && node != null; i++) {
+            node = node.find(segments, i);
+        }
+        if (node != null && node.mRoutes != null) {
+            return new Match(segments, node.mRoutes, node.mMethods);
+        }
+
+        List<Route> routes = new ArrayList<>();
+        collect(mRoot, segments, 0, routes);
+        if (routes.size() > 1) {
+            Collections.sort(routes);
+        }
+        return new Match(segments, routes, null);
+    }
+
+    private static void collect(Node node, PathSegments segments, int index, List<Route> routes) {
+        if (index == segments.size()) {
+            if (node.mRoutes != null) {
+                routes.addAll(node.mRoutes);
+            }
+            return;
+        }
+
+        Node child = node.find(segments, index);
+        if (child != null) {
+            collect(child, segments, index + 1, routes);
+        }
+        if (node.mWildcard != null) {
+            collect(node.mWildcard, segments, index + 1, routes);
+        }
+    }
+
+    private static class Node {
+
+        private String[] mKeys;
+        private int[] mHashes;
+        private Node[] mChildren;
+        private Node mWildcard;
+        private List<Route> mRoutes;
+        private Map<HttpMethod, Route> mMethods;
+
+        private Node child(String value) {
+            int length = mKeys == null ? 0 : mKeys.length;
+            for (int i = 0; i < length; i++) {
+                if (mKeys[i].equals(value)) {
+                    return mChildren[i];
+                }
+            }
+
+            mKeys = mKeys == null ? new String[1] : Arrays.copyOf(mKeys, length + 1);
+            mHashes = mHashes == null ? new int[1] : Arrays.copyOf(mHashes, length + 1);
+            mChildren = mChildren == null ? new Node[1] : Arrays.copyOf(mChildren, length + 1);
+            mKeys[length] = value;
+            mHashes[length] = value.hashCode();
+            mChildren[length] = new Node();
+            return mChildren[length];
+        }
+
+        private Node find(PathSegments segments, int index) {
+            if (mKeys == null) {
+                return null;
+            }
+
+            int hash = segments.hash(index);
+            for (int i = 0; i < mKeys.length; i++) {
+                if (mHashes[i] == hash && segments.equals(index, mKeys[i])) {
+                    return mChildren[i];
+                }
+            }
+            return null;
+        }
+
+        private Node wildcard() {
+            if (mWildcard == null) {
+                mWildcard = new Node();
+            }
+            return mWildcard;
+        }
+
+        private void add(Route route) {
+            if (mRoutes == null) {
+                mRoutes = new ArrayList<>();
+                mMethods = new EnumMap<>(HttpMethod.class);
+            }
+            mRoutes.add(route);
+            for (HttpMethod method: route.getMapping().getMethod().getRuleList()) {
+                if (!mMethods.containsKey(method)) {
+                    mMethods.put(method, route);
+                }
+            }
+        }
+    }
+
+    public static class Route implements Comparable<Route> {
+
+        private final int order;
+        private final Mapping mapping;
+        private final Condition condition;
+        private final String[] variables;
+
+        private Route(int order, Mapping mapping, Condition condition, String[] variables) {
+            this.order = order;
+            this.mapping = mapping;
+            this.condition = condition;
+            this.variables = variables;
+        }
+
+        @NonNull
+        public Mapping getMapping() {
+            return mapping;
+        }
+
+        /**
+         * Get the compiled conditions of the mapping.
+         */
+        @NonNull
+        public Condition getCondition() {
+            return condition;
+        }
+
+        /**
+         * Get the names of the path variables by position, the positions of static segments are {@code null}.
+         *
+         * @return the names, or {@code null} if the path rule has no blurred segment.
+         */
+        @Nullable
+        public String[] getVariables() {
+            return variables;
+        }
+
+        @Override
+        public int compareTo(Route o) {
+            return Integer.compare(order, o.order);
+        }
+    }
+
+    public static class Match {
+
+        private final PathSegments segments;
+        private final List<Route> routes;
+        private final Map<HttpMethod, Route> methods;
+        private String[] values;
+
+        private Match(PathSegments segments, List<Route> routes, Map<HttpMethod, Route> methods) {
+            this.segments = segments;
+            this.routes = routes;
+            this.methods = methods;
+        }
+
+        public boolean isEmpty() {
+            return routes.isEmpty();
+        }
+
+        /**
+         * Get the segment values of the matched path.
+         */
+        @NonNull
+        public String[] getValues() {
+            if (values == null) {
+                String[] values = new String[segments.size()];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = segments.getSegment(i);
+                }
+                this.values = values;
+            }
+            return values;
+        }
+
+        @NonNull
+        public List<Route> getRoutes() {
+            return routes;
+        }
+
+        /**
+         * Get the first route which supports the method.
+         *
+         * @param method the method of the request.
+         *
+         * @return the route, or {@code null} if no route supports the method.
+         */
+        @Nullable
+        public Route getRoute(@NonNull HttpMethod method) {
+            if (methods != null) {
+                return methods.get(method);
+            }
+            for (Route route: routes) {
+                if (route.getMapping().getMethod().getRuleList().contains(method)) {
+                    return route;
+                }
+            }
+            return null;
+        }
+
+        @NonNull
+        public List<Mapping> getMappings() {
+            List<Mapping> mappings = new ArrayList<>(routes.size());
+            for (Route route: routes) {
+                mappings.add(route.getMapping());
+            }
+            return mappings;
+        }
+
+        /**
+         * Keep only the routes of the mappings, e.g. the mappings of one adapter when the router is shared by several
+         * adapters.
+         *
+         * @param mappings the mappings to keep.
+         *
+         * @return this match if all of its routes are kept, otherwise a new match.
+         */
+        @NonNull
+        public Match retain(@NonNull Set<Mapping> mappings) {
+            List<Route> retained = null;
+            for (int i = 0; i < routes.size(); i++) {
+                Route route = routes.get(i);
+                if (!mappings.contains(route.getMapping())) {
+                    if (retained == null) {
+                        retained = new ArrayList<>(routes.subList(0, i));
+                    }
+                } else if (retained != null) {
+                    retained.add(route);
+                }
+            }
+            return retained == null ? this : new Match(segments, retained, null);
+        }
+
+        /**
+         * Select one of the routes of this match.
+         *
+         * @param route one of the routes of this match.
+         *
+         * @return the result of the route.
+         */
+        @NonNull
+        public Result select(@NonNull Route route) {
+            return new Result(route, this);
+        }
+    }
+
+    /**
+     * The route selected for a request, together with the segment values of the request path.
+     */
+    public static class Result {
+
+        private final Route route;
+        private final Match match;
+
+        private Result(Route route, Match match) {
+            this.route = route;
+            this.match = match;
+        }
+
+        @NonNull
+        public Route getRoute() {
+            return route;
+        }
+
+        @NonNull
+        public Mapping getMapping() {
+            return route.getMapping();
+        }
+
+        /**
+         * Get the segment values of the request path.
+         */
+        @NonNull
+        public String[] getValues() {
+            return match.getValues();
+        }
+
+        /**
+         * Get the value of a path variable.
+         *
+         * @param name the name of the variable.
+         *
+         * @return the value, or {@code null} if the route has no such variable.
+         */
+        @Nullable
+        public String getPathVariable(@NonNull String name) {
+            String[] variables = route.getVariables();
+            if (variables == null) {
+                return null;
+            }
+
+            for (int i = 0; i < variables.length; i++) {
+                if (name.equals(variables[i])) {
+                    return match.segments.getSegment(i);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Get all the path variables of the route.
+         *
+         * @return the variables, never null.
+         */
+        @NonNull
+        public Map<String, String> getPathVariables() {
+            String[] variables = route.getVariables();
+            if (variables == null) {
+                return Collections.emptyMap();
+            }
+
+            String[] values = match.getValues();
+            Map<String, String> map = new HashMap<>();
+            for (int i = 0; i < variables.length; i++) {
+                if (variables[i] != null) {
+                    map.put(variables[i], values[i]);
+                }
+            }
+            return map;
+        }
+    }
+}
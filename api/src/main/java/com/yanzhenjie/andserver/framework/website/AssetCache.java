@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2022 ISNing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.andserver.framework.website;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.yanzhenjie.andserver.util.Assert;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An in-memory cache of the contents of assets, bounded by the total bytes. The entries are kept in LRU order, and a
+ * new entry only replaces the least recently used ones if it is asked for more often than they are, which is the
+ * TinyLFU admission. So a burst of requests for cold assets cannot flush the hot ones out.
+ *
+ * <p>The contents are returned as read-only duplicates, they are never copied.
+ */
+public class AssetCache {
+
+    public static final long DEFAULT_MAX_BYTES = 8 * 1024 * 1024;
+    public static final int DEFAULT_MAX_ENTRY_SIZE = 512 * 1024;
+
+    private final long mMaxBytes;
+    private final int mMaxEntrySize;
+    private final boolean isDirect;
+
+    private final LinkedHashMap<String, ByteBuffer> mEntries = new LinkedHashMap<>(16, 0.75F, true);
+    private final FrequencySketch mSketch = new FrequencySketch(1024);
+    private long mBytes;
+
+    private long mHitCount;
+    private long mMissCount;
+    private long mEvictionCount;
+    private long mRejectionCount;
+
+    public AssetCache() {
+        this(DEFAULT_MAX_BYTES, DEFAULT_MAX_ENTRY_SIZE, false);
+    }
+
+    /**
+     * Create a cache.
+     *
+     * @param maxBytes the max number of bytes of all the entries.
+     * @param maxEntrySize the max length of an asset which is cached, the larger assets are streamed.
+     * @param direct whether the contents are kept outside of the heap.
+     */
+    public AssetCache(long maxBytes, int maxEntrySize, boolean direct) {
+        Assert.isTrue(maxBytes > 0, "The maxBytes must be greater than 0.");
+        Assert.isTrue(maxEntrySize > 0, "The maxEntrySize must be greater than 0.");
+        this.mMaxBytes = maxBytes;
+        this.mMaxEntrySize = (int) Math.min(maxEntrySize, maxBytes);
+        this.isDirect = direct;
+    }
+
+    /**
+     * Whether an asset of the length can be cached.
+     */
+    public boolean accepts(long length) {
+        return length >= 0 && length <= mMaxEntrySize;
+    }
+
+    /**
+     * Get the content of the asset.
+     *
+     * @param key the path of the asset.
+     *
+     * @return a read-only view of the content, or {@code null} if the asset is not cached.
+     */
+    @Nullable
+    public synchronized ByteBuffer get(@NonNull String key) {
+        mSketch.increment(key);
+        ByteBuffer buffer = mEntries.get(key);
+        if (buffer == null) {
+            mMissCount++;
+            return null;
+        }
+        mHitCount++;
+        return buffer.duplicate();
+    }
+
+    /**
+     * Offer the content of the asset to the cache.
+     *
+     * @param key the path of the asset.
+     * @param content the content, it must not be changed after it is offered.
+     *
+     * @return a read-only view of the content, it is not cached if it lost the admission.
+     */
+    @NonNull
+    public ByteBuffer put(@NonNull String key, @NonNull byte[] content) {
+        ByteBuffer buffer;
+        if (isDirect) {
+            buffer = ByteBuffer.allocateDirect(content.length);
+            buffer.put(content);
+            buffer.flip();
+        } else {
+            buffer = ByteBuffer.wrap(content);
+        }
+        buffer = buffer.asReadOnlyBuffer();
+
+        if (!accepts(content.length) || !admit(key, buffer)) {
+            synchronized (this) {
+                mRejectionCount++;
+            }
+        }
+        return buffer.duplicate();
+    }
+
+    private synchronized boolean admit(String key, ByteBuffer buffer) {
+        ByteBuffer old = mEntries.remove(key);
+        if (old != null) {
+            mBytes -= old.capacity();
+        }
+
+        int frequency = mSketch.frequency(key);
+        long needed = mBytes + buffer.capacity() - mMaxBytes;
+        Iterator<Map.Entry<String, ByteBuffer>> iterator = mEntries.entrySet().iterator();
+        long freed = 0;
+        int victims = 0;
+        while (freed < needed && iterator.hasNext()) {
+            Map.Entry<String, ByteBuffer> victim = iterator.next();
+            if (mSketch.frequency(victim.getKey()) >= frequency) {
+                return false;
+            }
+            freed += victim.getValue().capacity();
+            victims++;
+        }
+
+        iterator = mEntries.entrySet().iterator();
+        for (int i = 0; i < victims; i++) {
+            ByteBuffer victim = iterator.next().getValue();
+            iterator.remove();
+            mBytes -= victim.capacity();
+            mEvictionCount++;
+        }
+        mEntries.put(key, buffer);
+        mBytes += buffer.capacity();
+        return true;
+    }
+
+    /**
+     * Drop all the entries, the frequencies are kept.
+     */
+    public synchronized void clear() {
+        mEntries.clear();
+        mBytes = 0;
+    }
+
+    public synchronized int getCount() {
+        return mEntries.size();
+    }
+
+    /**
+     * Get the number of bytes of all the entries.
+     */
+    public synchronized long getBytes() {
+        return mBytes;
+    }
+
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    /**
+     * Get the number of contents which were not cached, because they were too large or lost the admission.
+     */
+    public synchronized long getRejectionCount() {
+        return mRejectionCount;
+    }
+
+    /**
+     * A count-min sketch of 4-bit counters, the counters are halved periodically so the old accesses fade out.
+     */
+    private static class FrequencySketch {
+
+        private static final int MAX_COUNT = 15;
+
+        private final long[] mTable;
+        private final int mSampleSize;
+        private int mSize;
+
+        private FrequencySketch(int counters) {
+            // Every long holds 16 counters.
+            this.mTable = new long[Math.max(1, counters / 16)];
+            this.mSampleSize = counters * 10;
+        }
+
+        private void increment(String key) {
+            int hash = spread(key.hashCode());
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                added |= incrementAt(indexOf(hash, i), offsetOf(hash, i));
+            }
+            if (added && ++mSize >= mSampleSize) {
+                reset();
+            }
+        }
+
+        private int frequency(String key) {
+            int hash = spread(key.hashCode());
+            int frequency = MAX_COUNT;
+            for (int i = 0; i < 4; i++) {
+                long count = (mTable[indexOf(hash, i)] >>> offsetOf(hash, i)) & 0xFL;
+                frequency = Math.min(frequency, (int) count);
+            }
+            return frequency;
+        }
+
+        private boolean incrementAt(int index, int offset) {
+            long mask = 0xFL << offset;
+            if ((mTable[index] & mask) != mask) {
+                mTable[index] += 1L << offset;
+                return true;
+            }
+            return false;
+        }
+
+        private void reset() {
+            for (int i = 0; i < mTable.length; i++) {
+                mTable[i] = (mTable[i] >>> 1) & 0x7777777777777777L;
+            }
+            mSize /= 2;
+        }
+
+        private int indexOf(int hash, int i) {
+            int h = hash * (31 + (i << 1) * 0x9E3779B9);
+            h ^= h >>> 16;
+            return (h & Integer.MAX_VALUE) % mTable.length;
+        }
+
+        private static int offsetOf(int hash, int i) {
+            return (((hash >>> (i << 3)) & 0x3) << 2) + (i << 4);
+        }
+
+        private static int spread(int hash) {
+            hash = ((hash >>> 16) ^ hash) * 0x45D9F3B;
+            hash = ((hash >>> 16) ^ hash) * 0x45D9F3B;
+            return (hash >>> 16) ^ hash;
+        }
+    }
+}
@@ -25,6 +25,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.yanzhenjie.andserver.error.NotFoundException;
+import com.yanzhenjie.andserver.framework.body.ByteBufferBody;
 import com.yanzhenjie.andserver.framework.body.StreamBody;
 import com.yanzhenjie.andserver.framework.body.StringBody;
 import com.yanzhenjie.andserver.http.HttpRequest;
@@ -36,14 +37,22 @@ import com.yanzhenjie.andserver.util.IOUtils;
 import com.yanzhenjie.andserver.util.MediaType;
 import com.yanzhenjie.andserver.util.Patterns;
 
+import org.apache.commons.io.input.BoundedInputStream;
+
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * The assets cannot change while the app is installed, so the assets found for a path and their ETags are computed
+ * once and kept for the life of the website.
+ *
  * Created by Zhenjie Yan on 2018/9/7.
  */
 public class AssetsWebsite extends BasicWebsite implements Patterns {
@@ -51,6 +60,11 @@ public class AssetsWebsite extends BasicWebsite implements Patterns {
     private final AssetsReader mAssetsReader;
     private final String mRootPath;
     private final PackageInfo mPackageInfo;
+    private final AssetCache mAssetCache;
+
+    private final Map<String, Asset> mAssets = new ConcurrentHashMap<>();
+    private final Map<String, Asset> mVariants = new ConcurrentHashMap<>();
+    private final Map<String, String> mETags = new ConcurrentHashMap<>();
 
     /**
      * Create a website object.
@@ -68,6 +82,19 @@ public class AssetsWebsite extends BasicWebsite implements Patterns {
      * @param indexFileName the default file name for each directory, e.g. index.html.
      */
     public AssetsWebsite(@NonNull Context context, @NonNull String rootPath, @NonNull String indexFileName) {
+        this(context, rootPath, indexFileName, null);
+    }
+
+    /**
+     * Create a website object.
+     *
+     * @param rootPath website root directory.
+     * @param indexFileName the default file name for each directory, e.g. index.html.
+     * @param assetCache the cache which keeps the contents of the hot assets in memory, or {@code null} to read the
+     *     assets for every request.
+     */
+    public AssetsWebsite(@NonNull Context context, @NonNull String rootPath, @NonNull String indexFileName,
+                         @Nullable AssetCache assetCache) {
         super(indexFileName);
         Assert.isTrue(!TextUtils.isEmpty(rootPath), "The rootPath cannot be empty.");
         Assert.isTrue(!TextUtils.isEmpty(indexFileName), "The indexFileName cannot be empty.");
@@ -80,6 +107,7 @@ public class AssetsWebsite extends BasicWebsite implements Patterns {
 
         this.mAssetsReader = new AssetsReader(context.getAssets());
         this.mRootPath = trimSlash(rootPath);
+        this.mAssetCache = assetCache;
 
         PackageManager packageManager = context.getPackageManager();
         try {
@@ -91,72 +119,176 @@ public class AssetsWebsite extends BasicWebsite implements Patterns {
 
     @Override
     public boolean intercept(@NonNull HttpRequest request) {
-        String httpPath = request.getPath();
-        InputStream stream = findPathSteam(httpPath);
-        IOUtils.closeQuietly(stream);
-        return stream != null;
+        return resolve(request) != null;
     }
 
     @Override
     public String getETag(@NonNull HttpRequest request) throws Throwable {
-        String httpPath = request.getPath();
-        InputStream stream = findPathSteam(httpPath);
-        if (stream != null) {
-            try {
-                return DigestUtils.md5DigestAsHex(stream);
-            } finally {
-                IOUtils.closeQuietly(stream);
+        ResolvedResource resource = resolve(request);
+        if (resource != null) {
+            if (resource.getETag() == null) {
+                String assetPath = getContentResource(resource).getAssetPath();
+                resource.setETag(getEncodedETag(resource, getAssetETag(assetPath)));
             }
+            return resource.getETag();
         }
         return null;
     }
 
     @Override
     public long getLastModified(@NonNull HttpRequest request) throws Throwable {
-        String httpPath = request.getPath();
-        InputStream stream = findPathSteam(httpPath);
-        IOUtils.closeQuietly(stream);
-        return stream != null ? mPackageInfo.lastUpdateTime : -1;
+        ResolvedResource resource = resolve(request);
+        return resource != null ? resource.getLastModified() : -1;
     }
 
     @NonNull
     @Override
     public ResponseBody getBody(@NonNull HttpRequest request, @NonNull HttpResponse response) throws IOException {
         String httpPath = request.getPath();
-        String objectPath = mRootPath + httpPath;
-        InputStream stream = mAssetsReader.getInputStream(objectPath);
-        if (stream != null) {
-            MediaType mediaType = MediaType.getFileMediaType(objectPath);
-            return new StreamBody(stream, stream.available(), mediaType);
+        ResolvedResource resource = resolve(request);
+        if (resource == null) {
+            throw new NotFoundException(httpPath);
+        }
+
+        if (resource.isIndex() && !httpPath.endsWith(File.separator)) {
+            String redirectPath = addEndSlash(httpPath);
+            String query = queryString(request);
+            response.sendRedirect(redirectPath + "?" + query);
+            return new StringBody("");
+        }
+
+        return getResourceBody(request, response, resource);
+    }
+
+    @Nullable
+    @Override
+    protected ResponseBody getContentBody(@NonNull ResolvedResource content, @Nullable MediaType mediaType,
+                                          long position, long length) throws IOException {
+        String assetPath = content.getAssetPath();
+        ByteBuffer buffer = mAssetCache != null ? mAssetCache.get(assetPath) : null;
+        if (buffer != null) {
+            return new ByteBufferBody(slice(buffer, position, length), mediaType);
+        }
+
+        InputStream stream = mAssetsReader.getInputStream(assetPath);
+        if (stream == null) {
+            return null;
+        }
+        if (mAssetCache != null && mAssetCache.accepts(content.getLength())) {
+            try {
+                buffer = mAssetCache.put(assetPath, IOUtils.toByteArray(stream, (int) content.getLength()));
+                return new ByteBufferBody(slice(buffer, position, length), mediaType);
+            } finally {
+                IOUtils.closeQuietly(stream);
+            }
+        }
+        if (length < 0) {
+            return new StreamBody(stream, content.getLength(), mediaType);
         }
+        try {
+            org.apache.commons.io.IOUtils.skipFully(stream, position);
+        } catch (IOException e) {
+            IOUtils.closeQuietly(stream);
+            throw e;
+        }
+        return new StreamBody(new BoundedInputStream(stream, length), length, mediaType);
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, long position, long length) {
+        if (length >= 0) {
+            buffer.limit((int) (position + length));
+            buffer.position((int) position);
+        }
+        return buffer;
+    }
 
-        String indexPath = addEndSlash(objectPath) + getIndexFileName();
-        InputStream indexStream = mAssetsReader.getInputStream(indexPath);
-        if (indexStream != null) {
-            if (!httpPath.endsWith(File.separator)) {
-                IOUtils.closeQuietly(indexStream);
-                String redirectPath = addEndSlash(httpPath);
-                String query = queryString(request);
-                response.sendRedirect(redirectPath + "?" + query);
-                return new StringBody("");
+    /**
+     * Get the MD5 of the asset, it is hashed on the first call only.
+     */
+    private String getAssetETag(String assetPath) throws IOException {
+        String eTag = mETags.get(assetPath);
+        if (eTag == null) {
+            InputStream stream = mAssetsReader.getInputStream(assetPath);
+            if (stream == null) {
+                return null;
+            }
+            try {
+                eTag = DigestUtils.md5DigestAsHex(stream);
+            } finally {
+                IOUtils.closeQuietly(stream);
             }
+            mETags.put(assetPath, eTag);
+        }
+        return eTag;
+    }
 
-            final MediaType mediaType = MediaType.getFileMediaType(indexPath);
-            return new StreamBody(indexStream, indexStream.available(), mediaType);
+    @Nullable
+    @Override
+    protected ResolvedResource findResource(@NonNull String httpPath) {
+        Asset asset = mAssets.get(httpPath);
+        if (asset == null) {
+            String targetPath = mRootPath + httpPath;
+            asset = findAsset(targetPath, false);
+            if (asset == null) {
+                String indexPath = addEndSlash(targetPath) + getIndexFileName();
+                asset = findAsset(indexPath, true);
+            }
+            if (asset == null) {
+                return null;
+            }
+            mAssets.put(httpPath, asset);
         }
+        return ResolvedResource.ofAsset(this, httpPath, asset.path, asset.index, asset.length,
+            mPackageInfo.lastUpdateTime);
+    }
 
-        throw new NotFoundException(httpPath);
+    @Nullable
+    @Override
+    protected ResolvedResource findEncodedResource(@NonNull ResolvedResource resource, @NonNull String suffix) {
+        String assetPath = resource.getAssetPath() + suffix;
+        Asset asset = mVariants.get(assetPath);
+        if (asset == null) {
+            asset = findAsset(assetPath, resource.isIndex());
+            mVariants.put(assetPath, asset == null ? Asset.MISSING : asset);
+        }
+        if (asset == Asset.MISSING) {
+            return null;
+        }
+        return ResolvedResource.ofAsset(this, resource.getPath(), asset.path, asset.index, asset.length,
+            mPackageInfo.lastUpdateTime);
     }
 
-    private InputStream findPathSteam(String httpPath) {
-        String targetPath = mRootPath + httpPath;
-        InputStream targetStream = mAssetsReader.getInputStream(targetPath);
-        if (targetStream != null) {
-            return targetStream;
+    private Asset findAsset(String assetPath, boolean index) {
+        InputStream stream = mAssetsReader.getInputStream(assetPath);
+        if (stream == null) {
+            return null;
+        }
+        try {
+            return new Asset(assetPath, index, stream.available());
+        } catch (IOException e) {
+            return null;
+        } finally {
+            IOUtils.closeQuietly(stream);
         }
+    }
+
+    /**
+     * The asset found for a path, only the paths which are found are kept. The variants are looked up for every
+     * compressible asset, so the missing ones are kept as {@link #MISSING}.
+     */
+    private static class Asset {
+
+        private static final Asset MISSING = new Asset("", false, -1);
 
-        String indexPath = addEndSlash(targetPath) + getIndexFileName();
-        return mAssetsReader.getInputStream(indexPath);
+        private final String path;
+        private final boolean index;
+        private final long length;
+
+        private Asset(String path, boolean index, long length) {
+            this.path = path;
+            this.index = index;
+            this.length = length;
+        }
     }
 
     public static class AssetsReader {
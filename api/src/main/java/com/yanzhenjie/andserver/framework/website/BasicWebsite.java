@@ -18,12 +18,28 @@ package com.yanzhenjie.andserver.framework.website;
 import android.text.TextUtils;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
+import com.yanzhenjie.andserver.error.NotFoundException;
+import com.yanzhenjie.andserver.framework.body.ByteRangesBody;
+import com.yanzhenjie.andserver.framework.body.GzipBody;
+import com.yanzhenjie.andserver.framework.body.StringBody;
+import com.yanzhenjie.andserver.http.AcceptEncoding;
+import com.yanzhenjie.andserver.http.ByteRange;
+import com.yanzhenjie.andserver.http.Header;
+import com.yanzhenjie.andserver.http.HttpContext;
+import com.yanzhenjie.andserver.http.HttpHeaders;
 import com.yanzhenjie.andserver.http.HttpRequest;
+import com.yanzhenjie.andserver.http.HttpResponse;
+import com.yanzhenjie.andserver.http.ResponseBody;
+import com.yanzhenjie.andserver.http.StatusCode;
 import com.yanzhenjie.andserver.util.Assert;
+import com.yanzhenjie.andserver.util.MediaType;
 import com.yanzhenjie.andserver.util.MultiValueMap;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -34,8 +50,19 @@ public abstract class BasicWebsite extends Website {
 
     public static final String DEFAULT_INDEX = "index.html";
 
+    /**
+     * The smaller resources are not compressed while they are sent, the gzip framing would outweigh the savings.
+     */
+    public static final long MIN_COMPRESSION_LENGTH = 256;
+
+    private static final String[] PRECOMPRESSED_CODINGS = {"br", GzipBody.ENCODING};
+    private static final String[] PRECOMPRESSED_SUFFIXES = {".br", ".gz"};
+
     private final String mIndexFileName;
 
+    private boolean isPrecompressed;
+    private boolean isCompression;
+
     public BasicWebsite() {
         this(DEFAULT_INDEX);
     }
@@ -60,6 +87,255 @@ public abstract class BasicWebsite extends Website {
         return -1;
     }
 
+    /**
+     * Resolve the resource of the request. It is resolved once and kept in the request, the later calls for the same
+     * path return the same resource.
+     *
+     * @param request current request.
+     *
+     * @return the resource, or {@code null} if this website has no resource for the path.
+     */
+    @Nullable
+    protected final ResolvedResource resolve(@NonNull HttpRequest request) {
+        String httpPath = request.getPath();
+        Object object = request.getAttribute(HttpContext.REQUEST_RESOLVED_RESOURCE);
+        if (object instanceof ResolvedResource) {
+            ResolvedResource resource = (ResolvedResource) object;
+            if (resource.getOwner() == this && resource.getPath().equals(httpPath)) {
+                return resource;
+            }
+        }
+
+        ResolvedResource resource = findResource(httpPath);
+        if (resource != null) {
+            negotiateEncoding(request, resource);
+            request.setAttribute(HttpContext.REQUEST_RESOLVED_RESOURCE, resource);
+        }
+        return resource;
+    }
+
+    /**
+     * Choose the content coding of the resource, a precompressed variant is preferred to compressing it.
+     */
+    private void negotiateEncoding(HttpRequest request, ResolvedResource resource) {
+        if (resource.isDirectory() || (!isPrecompressed && !isCompression)) {
+            return;
+        }
+        boolean compressible = isCompressible(resource.getMediaType());
+        resource.setVaryEncoding(isPrecompressed || compressible);
+        if (!resource.isVaryEncoding()) {
+            return;
+        }
+
+        List<AcceptEncoding> encodings = new ArrayList<>();
+        for (Header header: request.getHeaders(HttpHeaders.ACCEPT_ENCODING)) {
+            encodings.addAll(AcceptEncoding.parse(header.getValue()));
+        }
+        if (encodings.isEmpty()) {
+            return;
+        }
+
+        if (isPrecompressed) {
+            for (int i = 0; i < PRECOMPRESSED_CODINGS.length; i++) {
+                if (AcceptEncoding.accepts(encodings, PRECOMPRESSED_CODINGS[i])) {
+                    ResolvedResource variant = findEncodedResource(resource, PRECOMPRESSED_SUFFIXES[i]);
+                    if (variant != null) {
+                        resource.setContentEncoding(PRECOMPRESSED_CODINGS[i], variant);
+                        return;
+                    }
+                }
+            }
+        }
+        if (isCompression && compressible && resource.getLength() >= MIN_COMPRESSION_LENGTH &&
+            AcceptEncoding.accepts(encodings, GzipBody.ENCODING)) {
+            resource.setContentEncoding(GzipBody.ENCODING, null);
+        }
+    }
+
+    /**
+     * Find the precompressed variant of the resource, which is the resource with the suffix, e.g. {@code
+     * index.html.gz}.
+     *
+     * @param resource the resource.
+     * @param suffix the suffix of the variant, {@code .br} or {@code .gz}.
+     *
+     * @return the variant, or {@code null} if it is not found.
+     */
+    @Nullable
+    protected ResolvedResource findEncodedResource(@NonNull ResolvedResource resource, @NonNull String suffix) {
+        return null;
+    }
+
+    /**
+     * Whether the media type is worth compressing, the images, videos and archives are compressed already.
+     */
+    protected boolean isCompressible(@Nullable MediaType mediaType) {
+        if (mediaType == null) {
+            return false;
+        }
+        String subtype = mediaType.getSubtype();
+        return "text".equals(mediaType.getType()) || "json".equals(subtype) || "xml".equals(subtype) ||
+            "javascript".equals(subtype) || "x-javascript".equals(subtype) || subtype.endsWith("+json") ||
+            subtype.endsWith("+xml");
+    }
+
+    /**
+     * Get the resource whose content is sent, the precompressed variant if there is one.
+     */
+    @NonNull
+    protected final ResolvedResource getContentResource(@NonNull ResolvedResource resource) {
+        ResolvedResource variant = resource.getEncodedResource();
+        return variant != null ? variant : resource;
+    }
+
+    /**
+     * Get the ETag of the representation which is sent, so the compressed and the identity responses are never
+     * mistaken for each other by a cache.
+     *
+     * @param resource the resource.
+     * @param eTag the ETag of the content, the content of the precompressed variant if it is sent.
+     */
+    protected final String getEncodedETag(@NonNull ResolvedResource resource, @Nullable String eTag) {
+        String encoding = resource.getContentEncoding();
+        if (eTag == null || encoding == null) {
+            return eTag;
+        }
+        return eTag + "-" + encoding;
+    }
+
+    /**
+     * Get the body of the resource, which is the requested ranges of it if the {@code Range} of the request can be
+     * served, with the negotiated content coding applied.
+     *
+     * @param request current request.
+     * @param response current response.
+     * @param resource the resource.
+     *
+     * @return the body which is sent.
+     */
+    @NonNull
+    protected final ResponseBody getResourceBody(@NonNull HttpRequest request, @NonNull HttpResponse response,
+                                                 @NonNull ResolvedResource resource) throws IOException {
+        ResolvedResource content = getContentResource(resource);
+        MediaType mediaType = resource.getMediaType();
+
+        ResponseBody body = null;
+        // The length of a body which is compressed while it is sent is unknown, so its ranges cannot be served.
+        if (resource.getContentEncoding() == null || resource.getEncodedResource() != null) {
+            response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+            body = getRangesBody(request, response, content, mediaType);
+        }
+        if (body == null) {
+            body = getContentBody(content, mediaType, 0, -1);
+            if (body == null) {
+                throw new NotFoundException(request.getPath());
+            }
+        }
+
+        if (resource.isVaryEncoding()) {
+            response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        String encoding = resource.getContentEncoding();
+        if (encoding == null || response.getStatus() == StatusCode.SC_REQUESTED_RANGE_NOT_SATISFIABLE) {
+            return body;
+        }
+        response.setHeader(HttpHeaders.CONTENT_ENCODING, encoding);
+        return resource.getEncodedResource() != null ? body : new GzipBody(body);
+    }
+
+    /**
+     * Get the body of the requested ranges, the {@code If-Range} of the request is validated by the {@link
+     * com.yanzhenjie.andserver.framework.ModifiedInterceptor} with the same ETag and last modified time.
+     *
+     * @return the body, or {@code null} if the whole content is sent.
+     */
+    @Nullable
+    private ResponseBody getRangesBody(HttpRequest request, HttpResponse response, ResolvedResource content,
+                                       MediaType mediaType) throws IOException {
+        Object applicable = request.getAttribute(HttpContext.REQUEST_RANGE_APPLICABLE);
+        Header header = request.getHeader(HttpHeaders.RANGE);
+        if (!Boolean.TRUE.equals(applicable) || header == null) {
+            return null;
+        }
+
+        long length = content.getLength();
+        List<ByteRange> ranges = ByteRange.parse(header.getValue(), length);
+        if (ranges == null) {
+            return null;
+        }
+        if (ranges.isEmpty()) {
+            response.setStatus(StatusCode.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+            return new StringBody("");
+        }
+
+        List<ResponseBody> parts = new ArrayList<>(ranges.size());
+        for (ByteRange range: ranges) {
+            ResponseBody part = getContentBody(content, mediaType, range.getStart(), range.getLength());
+            if (part == null) {
+                return null;
+            }
+            parts.add(part);
+        }
+        response.setStatus(StatusCode.SC_PARTIAL_CONTENT);
+        if (parts.size() == 1) {
+            response.setHeader(HttpHeaders.CONTENT_RANGE, ranges.get(0).toContentRange(length));
+            return parts.get(0);
+        }
+        return new ByteRangesBody(parts, ranges, mediaType, length);
+    }
+
+    /**
+     * Get the body of the content or a region of it.
+     *
+     * @param content the resource whose content is sent, see {@link #getContentResource(ResolvedResource)}.
+     * @param mediaType the media type of the requested resource.
+     * @param position the position of the first byte of the region.
+     * @param length the length of the region, or {@code -1} for the whole content.
+     *
+     * @return the body, or {@code null} if the content cannot be read.
+     */
+    @Nullable
+    protected ResponseBody getContentBody(@NonNull ResolvedResource content, @Nullable MediaType mediaType,
+                                          long position, long length) throws IOException {
+        return null;
+    }
+
+    /**
+     * Whether to send the {@code .br} or {@code .gz} sibling of a resource when the client accepts it. The siblings
+     * can be generated when the app is built, see the {@code andServer.compressAssets} property of the plugin.
+     */
+    public void setPrecompressed(boolean precompressed) {
+        this.isPrecompressed = precompressed;
+    }
+
+    public boolean isPrecompressed() {
+        return isPrecompressed;
+    }
+
+    /**
+     * Whether to compress the text resources with gzip while they are sent, when there is no precompressed variant.
+     */
+    public void setCompression(boolean compression) {
+        this.isCompression = compression;
+    }
+
+    public boolean isCompression() {
+        return isCompression;
+    }
+
+    /**
+     * Find the resource of the path in the storage of this website.
+     *
+     * @param httpPath path.
+     *
+     * @return the resource, or {@code null} if it is not found.
+     */
+    @Nullable
+    protected ResolvedResource findResource(@NonNull String httpPath) {
+        return null;
+    }
+
     /**
      * Get the name of the indexFile.
      *
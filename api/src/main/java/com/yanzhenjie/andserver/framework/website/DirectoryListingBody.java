@@ -0,0 +1,495 @@
+/*
+ * Copyright (C) 2022 ISNing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.andserver.framework.website;
+
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+import com.yanzhenjie.andserver.http.ResponseBody;
+import com.yanzhenjie.andserver.util.ContentTypes;
+import com.yanzhenjie.andserver.util.MediaType;
+
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.entity.AbstractHttpEntity;
+import org.apache.hc.core5.http.nio.AsyncEntityProducer;
+import org.apache.hc.core5.http.nio.DataStreamChannel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * The listing of a directory, it is rendered a page of entries at a time while it is sent, so a large directory is
+ * neither held in memory as a whole nor written to disk first.
+ */
+class DirectoryListingBody implements ResponseBody {
+
+    static final String FORMAT_HTML = "html";
+    static final String FORMAT_JSON = "json";
+
+    private static final String FOLDER_HTML_PREFIX = "<!DOCTYPE html><html><head><meta http-equiv=\"content-type\" " +
+        "content=\"text/html; charset=utf-8\"/> <meta name=\"viewport\" content=\"width=device-width, " +
+        "initial-scale=1, user-scalable=no\"><metaname=\"format-detection\" content=\"telephone=no\"/> " +
+        "<title>%1$s</title><style>.center_horizontal{margin:0 auto;text-align:center;} *,*::after,*::before " +
+        "{box-sizing: border-box;margin: 0;padding: 0;}a:-webkit-any-link {color: -webkit-link;cursor: auto;" +
+        "text-decoration: underline;}ul {list-style: none;display: block;list-style-type: none;-webkit-margin-before:" +
+        " 1em;-webkit-margin-after: 1em;-webkit-margin-start: 0px;-webkit-margin-end: 0px;-webkit-padding-start: " +
+        "40px;}li {display: list-item;text-align: -webkit-match-parent;margin-bottom: 5px;}</style></head><body><h1 " +
+        "class=\"center_horizontal\">%2$s</h1><ul>";
+    private static final String FOLDER_ITEM = "<li><a href=\"%1$s\">%2$s</a></li>";
+    private static final String FOLDER_HTML_SUFFIX = "</ul></body></html>";
+
+    private static final int PAGE_SIZE = 256;
+    private static final int MAX_PAGES = 4;
+
+    private final File mDirectory;
+    private final String mHttpPath;
+    private final String mFormat;
+    private final DirectoryListingCache mCache;
+    private final long mLastModified;
+    private final MediaType mMediaType;
+
+    /**
+     * @param directory the directory.
+     * @param httpPath the path of the request, it ends with a slash.
+     * @param format {@link #FORMAT_HTML} or {@link #FORMAT_JSON}.
+     * @param cache the cache which the rendered listing is kept in, or {@code null}.
+     * @param lastModified the modified time of the directory before it is listed.
+     */
+    DirectoryListingBody(File directory, String httpPath, String format, @Nullable DirectoryListingCache cache,
+                         long lastModified) {
+        this.mDirectory = directory;
+        this.mHttpPath = httpPath;
+        this.mFormat = format;
+        this.mCache = cache;
+        this.mLastModified = lastModified;
+        this.mMediaType = getMediaType(format);
+    }
+
+    static MediaType getMediaType(String format) {
+        return FORMAT_JSON.equals(format) ? MediaType.APPLICATION_JSON_UTF8 :
+            new MediaType(MediaType.TEXT_HTML, StandardCharsets.UTF_8);
+    }
+
+    public String getContentType() {
+        return mMediaType.toString();
+    }
+
+    @NonNull
+    @Override
+    public MediaType getContentTypeMedia() {
+        return mMediaType;
+    }
+
+    @NonNull
+    @Override
+    public AsyncEntityProducer toEntityProducer() {
+        return new ListingEntityProducer(new Renderer());
+    }
+
+    @NonNull
+    @Override
+    public HttpEntity toEntity() {
+        return new AbstractHttpEntity(ContentTypes.valueOf(mMediaType), null, true) {
+            @Override
+            public boolean isRepeatable() {
+                return true;
+            }
+
+            @Override
+            public long getContentLength() {
+                return -1;
+            }
+
+            @Override
+            public InputStream getContent() {
+                return new ListingStream(new Renderer());
+            }
+
+            @Override
+            public void writeTo(OutputStream outStream) throws IOException {
+                try (Renderer renderer = new Renderer()) {
+                    byte[] page;
+                    while ((page = renderer.next()) != null) {
+                        outStream.write(page);
+                    }
+                }
+                outStream.flush();
+            }
+
+            @Override
+            public boolean isStreaming() {
+                return false;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * Renders the listing a page at a time, and keeps a copy of it for the cache while it is small enough.
+     */
+    private class Renderer implements Closeable {
+
+        private Entries mEntries;
+        private ByteArrayOutputStream mCopy;
+        private boolean isHeadRendered;
+        private boolean isFirst = true;
+        private boolean isEnd;
+
+        private Renderer() {
+            if (mCache != null) {
+                mCopy = new ByteArrayOutputStream();
+            }
+        }
+
+        /**
+         * Render the next page.
+         *
+         * @return the page, or {@code null} if the listing is complete.
+         */
+        @Nullable
+        byte[] next() throws IOException {
+            if (isEnd) {
+                return null;
+            }
+
+            StringBuilder builder = new StringBuilder();
+            if (!isHeadRendered) {
+                isHeadRendered = true;
+                mEntries = Entries.open(mDirectory);
+                renderHead(builder);
+            }
+            for (int i = 0; i < PAGE_SIZE && mEntries.hasNext(); i++) {
+                renderItem(builder, mEntries.next());
+            }
+            if (!mEntries.hasNext()) {
+                isEnd = true;
+                renderTail(builder);
+            }
+
+            byte[] page = builder.toString().getBytes(StandardCharsets.UTF_8);
+            if (mCopy != null) {
+                if (mCopy.size() + page.length > mCache.getMaxEntrySize()) {
+                    mCopy = null;
+                } else {
+                    mCopy.write(page);
+                    if (isEnd) {
+                        mCache.put(mDirectory, mFormat, mLastModified, mCopy.toByteArray());
+                    }
+                }
+            }
+            if (isEnd) {
+                close();
+            }
+            return page;
+        }
+
+        private void renderHead(StringBuilder builder) {
+            if (FORMAT_JSON.equals(mFormat)) {
+                builder.append("{\"path\":");
+                appendJsonString(builder, mHttpPath);
+                builder.append(",\"entries\":[");
+            } else {
+                String folderName = escapeHtml(mDirectory.getName());
+                builder.append(String.format(FOLDER_HTML_PREFIX, folderName, folderName));
+            }
+        }
+
+        private void renderItem(StringBuilder builder, String name) {
+            if (FORMAT_JSON.equals(mFormat)) {
+                File child = new File(mDirectory, name);
+                boolean directory = child.isDirectory();
+                if (!isFirst) {
+                    builder.append(',');
+                }
+                builder.append("{\"name\":");
+                appendJsonString(builder, name);
+                builder.append(",\"directory\":").append(directory)
+                    .append(",\"length\":").append(directory ? 0 : child.length())
+                    .append(",\"lastModified\":").append(child.lastModified())
+                    .append('}');
+            } else {
+                String escapedName = escapeHtml(name);
+                builder.append(String.format(FOLDER_ITEM, escapeHtml(mHttpPath) + escapedName, escapedName));
+            }
+            isFirst = false;
+        }
+
+        private void renderTail(StringBuilder builder) {
+            builder.append(FORMAT_JSON.equals(mFormat) ? "]}" : FOLDER_HTML_SUFFIX);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (mEntries != null) {
+                mEntries.close();
+                mEntries = null;
+            }
+        }
+    }
+
+    /**
+     * Reads the pages, the next page is only rendered after the previous one has been read.
+     */
+    private static class ListingStream extends InputStream {
+
+        private final Renderer mRenderer;
+        private ByteBuffer mPage;
+
+        private ListingStream(Renderer renderer) {
+            this.mRenderer = renderer;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(@NonNull byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (mPage == null || !mPage.hasRemaining()) {
+                byte[] page = mRenderer.next();
+                if (page == null) {
+                    return -1;
+                }
+                mPage = ByteBuffer.wrap(page);
+            }
+            int count = Math.min(len, mPage.remaining());
+            mPage.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return mPage == null ? 0 : mPage.remaining();
+        }
+
+        @Override
+        public void close() throws IOException {
+            mRenderer.close();
+        }
+    }
+
+    /**
+     * Sends the pages as the channel takes them, and gives the reactor back after a few pages.
+     */
+    private class ListingEntityProducer implements AsyncEntityProducer {
+
+        private final Renderer mRenderer;
+        private ByteBuffer mPage;
+
+        private ListingEntityProducer(Renderer renderer) {
+            this.mRenderer = renderer;
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return false;
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public String getContentType() {
+            return DirectoryListingBody.this.getContentType();
+        }
+
+        @Override
+        public String getContentEncoding() {
+            return null;
+        }
+
+        @Override
+        public boolean isChunked() {
+            return true;
+        }
+
+        @Override
+        public Set<String> getTrailerNames() {
+            return null;
+        }
+
+        @Override
+        public int available() {
+            return mPage != null && mPage.hasRemaining() ? mPage.remaining() : 1;
+        }
+
+        @Override
+        public void produce(DataStreamChannel channel) throws IOException {
+            for (int pages = 0; ; ) {
+                if (mPage != null && mPage.hasRemaining()) {
+                    channel.write(mPage);
+                    if (mPage.hasRemaining()) {
+                        return;
+                    }
+                }
+                if (pages++ == MAX_PAGES) {
+                    channel.requestOutput();
+                    return;
+                }
+                byte[] page = mRenderer.next();
+                if (page == null) {
+                    channel.endStream();
+                    return;
+                }
+                mPage = ByteBuffer.wrap(page);
+            }
+        }
+
+        @Override
+        public void failed(Exception cause) {
+        }
+
+        @Override
+        public void releaseResources() {
+            try {
+                mRenderer.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * The names of the entries of a directory. A {@link DirectoryStream} reads them lazily, the {@link File#list()}
+     * of the older platforms reads them at once.
+     */
+    private abstract static class Entries implements Iterator<String>, Closeable {
+
+        static Entries open(File directory) throws IOException {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                return new StreamEntries(directory);
+            }
+            String[] names = directory.list();
+            if (names == null) {
+                throw new IOException("Failed to list " + directory.getPath() + ".");
+            }
+            return new ArrayEntries(names);
+        }
+    }
+
+    @RequiresApi(Build.VERSION_CODES.O)
+    private static class StreamEntries extends Entries {
+
+        private final DirectoryStream<Path> mStream;
+        private final Iterator<Path> mIterator;
+
+        private StreamEntries(File directory) throws IOException {
+            this.mStream = Files.newDirectoryStream(directory.toPath());
+            this.mIterator = mStream.iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return mIterator.hasNext();
+        }
+
+        @Override
+        public String next() {
+            return mIterator.next().getFileName().toString();
+        }
+
+        @Override
+        public void close() throws IOException {
+            mStream.close();
+        }
+    }
+
+    private static class ArrayEntries extends Entries {
+
+        private final Iterator<String> mIterator;
+
+        private ArrayEntries(String[] names) {
+            this.mIterator = Arrays.asList(names).iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return mIterator.hasNext();
+        }
+
+        @Override
+        public String next() {
+            return mIterator.next();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static String escapeHtml(String text) {
+        StringBuilder builder = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&':
+                    builder.append("&amp;");
+                    break;
+                case '<':
+                    builder.append("&lt;");
+                    break;
+                case '>':
+                    builder.append("&gt;");
+                    break;
+                case '"':
+                    builder.append("&quot;");
+                    break;
+                default:
+                    builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static void appendJsonString(StringBuilder builder, String text) {
+        builder.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < 0x20) {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        builder.append('"');
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2022 ISNing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.andserver.framework.website;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.yanzhenjie.andserver.util.Assert;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An LRU of the listings rendered by a {@link FileBrowser}, bounded by the total bytes. A listing is keyed by the
+ * directory and the format, and it is valid as long as the modified time of the directory is the same, which changes
+ * when an entry is added, removed or renamed.
+ *
+ * <p>The modified time of some file systems has a resolution of a second, a change within the second in which the
+ * listing was rendered may not be seen until the directory changes again.
+ */
+public class DirectoryListingCache {
+
+    public static final long DEFAULT_MAX_BYTES = 4 * 1024 * 1024;
+    public static final int DEFAULT_MAX_ENTRY_SIZE = 256 * 1024;
+
+    private final long mMaxBytes;
+    private final int mMaxEntrySize;
+
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(16, 0.75F, true);
+    private long mBytes;
+
+    private long mHitCount;
+    private long mMissCount;
+
+    public DirectoryListingCache() {
+        this(DEFAULT_MAX_BYTES, DEFAULT_MAX_ENTRY_SIZE);
+    }
+
+    /**
+     * Create a cache.
+     *
+     * @param maxBytes the max number of bytes of all the listings.
+     * @param maxEntrySize the max length of a listing which is cached, the larger listings are rendered for every
+     *     request.
+     */
+    public DirectoryListingCache(long maxBytes, int maxEntrySize) {
+        Assert.isTrue(maxBytes > 0, "The maxBytes must be greater than 0.");
+        Assert.isTrue(maxEntrySize > 0, "The maxEntrySize must be greater than 0.");
+        this.mMaxBytes = maxBytes;
+        this.mMaxEntrySize = (int) Math.min(maxEntrySize, maxBytes);
+    }
+
+    public int getMaxEntrySize() {
+        return mMaxEntrySize;
+    }
+
+    /**
+     * Get the rendered listing.
+     *
+     * @param directory the directory.
+     * @param format the format of the listing.
+     * @param lastModified the current modified time of the directory.
+     *
+     * @return the listing, or {@code null} if it is not cached or the directory changed since it was rendered.
+     */
+    @Nullable
+    public synchronized byte[] get(@NonNull File directory, @NonNull String format, long lastModified) {
+        String key = format + ':' + directory.getPath();
+        Entry entry = mEntries.get(key);
+        if (entry == null || entry.mLastModified != lastModified) {
+            mMissCount++;
+            return null;
+        }
+        mHitCount++;
+        return entry.mContent;
+    }
+
+    /**
+     * Keep the rendered listing.
+     *
+     * @param directory the directory.
+     * @param format the format of the listing.
+     * @param lastModified the modified time of the directory before it was listed.
+     * @param content the listing, it must not be changed after it is kept.
+     */
+    public synchronized void put(@NonNull File directory, @NonNull String format, long lastModified,
+                                 @NonNull byte[] content) {
+        if (content.length > mMaxEntrySize) {
+            return;
+        }
+        String key = format + ':' + directory.getPath();
+        Entry old = mEntries.put(key, new Entry(lastModified, content));
+        if (old != null) {
+            mBytes -= old.mContent.length;
+        }
+        mBytes += content.length;
+
+        Iterator<Map.Entry<String, Entry>> iterator = mEntries.entrySet().iterator();
+        while (mBytes > mMaxBytes && iterator.hasNext()) {
+            Map.Entry<String, Entry> eldest = iterator.next();
+            if (eldest.getKey().equals(key)) {
+                continue;
+            }
+            iterator.remove();
+            mBytes -= eldest.getValue().mContent.length;
+        }
+    }
+
+    /**
+     * Drop all the listings.
+     */
+    public synchronized void clear() {
+        mEntries.clear();
+        mBytes = 0;
+    }
+
+    /**
+     * Get the number of bytes of all the listings.
+     */
+    public synchronized long getBytes() {
+        return mBytes;
+    }
+
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    private static class Entry {
+
+        private final long mLastModified;
+        private final byte[] mContent;
+
+        private Entry(long lastModified, byte[] content) {
+            this.mLastModified = lastModified;
+            this.mContent = content;
+        }
+    }
+}
@@ -22,6 +22,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.yanzhenjie.andserver.error.NotFoundException;
+import com.yanzhenjie.andserver.framework.body.ByteBufferBody;
 import com.yanzhenjie.andserver.framework.body.FileBody;
 import com.yanzhenjie.andserver.framework.body.StringBody;
 import com.yanzhenjie.andserver.http.HttpRequest;
@@ -29,67 +30,68 @@ import com.yanzhenjie.andserver.http.HttpResponse;
 import com.yanzhenjie.andserver.http.ResponseBody;
 import com.yanzhenjie.andserver.util.Assert;
 import com.yanzhenjie.andserver.util.DigestUtils;
-import com.yanzhenjie.andserver.util.IOUtils;
 import com.yanzhenjie.andserver.util.MediaType;
 import com.yanzhenjie.andserver.util.Patterns;
 
-import org.apache.commons.io.Charsets;
-
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
 
 /**
  * Created by Zhenjie Yan on 2018/9/7.
  */
 public class FileBrowser extends BasicWebsite implements Patterns {
 
-    private static final String FOLDER_HTML_PREFIX = "<!DOCTYPE html><html><head><meta http-equiv=\"content-type\" " +
-        "content=\"text/html; charset=utf-8\"/> <meta name=\"viewport\" content=\"width=device-width, " +
-        "initial-scale=1, user-scalable=no\"><metaname=\"format-detection\" content=\"telephone=no\"/> " +
-        "<title>%1$s</title><style>.center_horizontal{margin:0 auto;text-align:center;} *,*::after,*::before " +
-        "{box-sizing: border-box;margin: 0;padding: 0;}a:-webkit-any-link {color: -webkit-link;cursor: auto;" +
-        "text-decoration: underline;}ul {list-style: none;display: block;list-style-type: none;-webkit-margin-before:" +
-        " 1em;-webkit-margin-after: 1em;-webkit-margin-start: 0px;-webkit-margin-end: 0px;-webkit-padding-start: " +
-        "40px;}li {display: list-item;text-align: -webkit-match-parent;margin-bottom: 5px;}</style></head><body><h1 " +
-        "class=\"center_horizontal\">%2$s</h1><ul>";
-    private static final String FOLDER_ITEM = "<li><a href=\"%1$s\">%2$s</a></li>";
-    private static final String FOLDER_HTML_SUFFIX = "</ul></body></html>";
+    /**
+     * The query parameter which asks for the listing of a directory in JSON, e.g. {@code /music/?format=json}.
+     */
+    public static final String PARAM_FORMAT = "format";
 
     private final String mRootPath;
+    private final DirectoryListingCache mListingCache;
 
     public FileBrowser(String rootPath) {
+        this(rootPath, null);
+    }
+
+    /**
+     * Create a website object.
+     *
+     * @param rootPath website root directory.
+     * @param listingCache the cache which keeps the rendered listings of the directories, or {@code null} to list
+     *     the directories for every request.
+     */
+    public FileBrowser(String rootPath, @Nullable DirectoryListingCache listingCache) {
         Assert.isTrue(!TextUtils.isEmpty(rootPath), "The rootPath cannot be empty.");
         Assert.isTrue(rootPath.matches(PATH), "The format of [%s] is wrong, it should be like [/root/project].");
         this.mRootPath = rootPath;
+        this.mListingCache = listingCache;
     }
 
     @Override
     public boolean intercept(@NonNull HttpRequest request) {
-        String httpPath = request.getPath();
-        File file = findPathFile(httpPath);
-        return file != null;
+        return resolve(request) != null;
     }
 
     @Override
     public String getETag(@NonNull HttpRequest request) throws Throwable {
-        String httpPath = request.getPath();
-        File file = findPathFile(httpPath);
-        if (file != null) {
-            String tag = file.getAbsolutePath() + file.lastModified();
-            return DigestUtils.md5DigestAsHex(tag);
+        ResolvedResource resource = resolve(request);
+        if (resource != null) {
+            if (resource.getETag() == null) {
+                ResolvedResource content = getContentResource(resource);
+                String tag = content.getFile().getAbsolutePath() + content.getLastModified();
+                resource.setETag(getEncodedETag(resource, DigestUtils.md5DigestAsHex(tag)));
+            }
+            return resource.getETag();
         }
         return null;
     }
 
     @Override
     public long getLastModified(@NonNull HttpRequest request) throws Throwable {
-        String httpPath = request.getPath();
-        File file = findPathFile(httpPath);
-        if (file != null) {
-            return file.lastModified();
+        ResolvedResource resource = resolve(request);
+        if (resource != null) {
+            return resource.getLastModified();
         }
         return -1;
     }
@@ -98,69 +100,58 @@ public class FileBrowser extends BasicWebsite implements Patterns {
     @Override
     public ResponseBody getBody(@NonNull HttpRequest request, @NonNull HttpResponse response) throws IOException {
         String httpPath = request.getPath();
-        File file = new File(mRootPath, httpPath);
-        if (!file.exists()) {
+        ResolvedResource resource = resolve(request);
+        if (resource == null) {
             throw new NotFoundException(httpPath);
         }
 
-        if (file.isDirectory()) {
+        File file = resource.getFile();
+        if (resource.isDirectory()) {
             if (!httpPath.endsWith(File.separator)) {
                 String redirectPath = addEndSlash(httpPath);
-                response.sendRedirect(redirectPath);
+                String query = queryString(request);
+                response.sendRedirect(query.isEmpty() ? redirectPath : redirectPath + "?" + query);
                 return new StringBody("");
             }
 
-            File tempFile = File.createTempFile("file_browser", ".html");
-            OutputStream outputStream = new FileOutputStream(tempFile);
-
-            String folderName = file.getName();
-            String prefix = String.format(FOLDER_HTML_PREFIX, folderName, folderName);
-            outputStream.write(prefix.getBytes(StandardCharsets.UTF_8));
-
-            File[] children = file.listFiles();
-            if (children != null && children.length > 0) {
-                for (File child: children) {
-                    String filePath = child.getAbsolutePath();
-                    int rootIndex = filePath.indexOf(mRootPath);
-                    String subHttpPath = filePath.substring(rootIndex + mRootPath.length());
-                    subHttpPath = addStartSlash(subHttpPath);
-                    String fileItem = String.format(FOLDER_ITEM, subHttpPath, child.getName());
-                    outputStream.write(fileItem.getBytes(StandardCharsets.UTF_8));
+            String format = DirectoryListingBody.FORMAT_JSON.equals(request.getParameter(PARAM_FORMAT)) ?
+                DirectoryListingBody.FORMAT_JSON : DirectoryListingBody.FORMAT_HTML;
+            if (mListingCache != null) {
+                byte[] listing = mListingCache.get(file, format, resource.getLastModified());
+                if (listing != null) {
+                    return new ByteBufferBody(ByteBuffer.wrap(listing).asReadOnlyBuffer(),
+                        DirectoryListingBody.getMediaType(format));
                 }
             }
-
-            outputStream.write(FOLDER_HTML_SUFFIX.getBytes(StandardCharsets.UTF_8));
-            IOUtils.closeQuietly(outputStream);
-
-            return new FileBody(tempFile) {
-                @Nullable
-                @Override
-                public MediaType getContentTypeMedia() {
-                    MediaType mimeType = super.getContentTypeMedia();
-                    if (mimeType != null) {
-                        mimeType = new MediaType(mimeType.getType(),
-                                mimeType.getSubtype(),
-                                Charsets.toCharset("utf-8"));
-                    }
-                    return mimeType;
-                }
-            };
+            return new DirectoryListingBody(file, httpPath, format, mListingCache, resource.getLastModified());
         } else {
-            return new FileBody(file);
+            return getResourceBody(request, response, resource);
         }
     }
 
-    /**
-     * Find the path specified resource.
-     *
-     * @param httpPath path.
-     *
-     * @return return if the file is found.
-     */
-    private File findPathFile(@NonNull String httpPath) {
+    @Nullable
+    @Override
+    protected ResponseBody getContentBody(@NonNull ResolvedResource content, @Nullable MediaType mediaType,
+                                          long position, long length) {
+        return new FileBody(content.getFile(), mediaType, position, length);
+    }
+
+    @Nullable
+    @Override
+    protected ResolvedResource findResource(@NonNull String httpPath) {
         File targetFile = new File(mRootPath, httpPath);
         if (targetFile.exists()) {
-            return targetFile;
+            return ResolvedResource.ofFile(this, httpPath, targetFile, false);
+        }
+        return null;
+    }
+
+    @Nullable
+    @Override
+    protected ResolvedResource findEncodedResource(@NonNull ResolvedResource resource, @NonNull String suffix) {
+        File file = new File(resource.getFile().getPath() + suffix);
+        if (file.isFile()) {
+            return ResolvedResource.ofFile(this, resource.getPath(), file, false);
         }
         return null;
     }
@@ -0,0 +1,351 @@
+/*
+ * Copyright (C) 2022 ISNing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.andserver.framework.website;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.yanzhenjie.andserver.util.Assert;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An LRU of memory mapped files, bounded by the total bytes of the files. A hot file is served from the mapped memory
+ * and is only checked against the file system once per check interval, its length is checked before every use.
+ *
+ * <p>An entry is dropped when the modified time or the length of its file changes. The cache does not watch the
+ * files, call {@link #invalidate(File)} from a file observer if a change must be seen before the next check.
+ *
+ * <p>Reading a mapped file which has been truncated crashes the process, so the cache must only be used for the
+ * files which are never rewritten in place, i.e. an immutable directory, or one whose files are replaced by renaming
+ * a new file over them.
+ */
+public class MappedStaticCache {
+
+    public static final long DEFAULT_MAX_BYTES = 32 * 1024 * 1024;
+    public static final long DEFAULT_MAX_FILE_SIZE = 1024 * 1024;
+    public static final long DEFAULT_CHECK_INTERVAL = 1000;
+
+    private final long mMaxBytes;
+    private final long mMaxFileSize;
+    private final long mCheckInterval;
+
+    /**
+     * The entries by the canonical paths of their files, so a file is mapped once however many paths point to it.
+     */
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(16, 0.75F, true);
+    /**
+     * The entries by the paths they have been asked for, a hit does not need to resolve the canonical path.
+     */
+    private final Map<String, Entry> mAliases = new HashMap<>();
+    private long mBytes;
+
+    private final AtomicLong mHitCount = new AtomicLong();
+    private final AtomicLong mMissCount = new AtomicLong();
+    private final AtomicLong mEvictionCount = new AtomicLong();
+
+    public MappedStaticCache() {
+        this(DEFAULT_MAX_BYTES, DEFAULT_MAX_FILE_SIZE, DEFAULT_CHECK_INTERVAL);
+    }
+
+    /**
+     * Create a cache.
+     *
+     * @param maxBytes the max number of bytes of all the mapped files.
+     * @param maxFileSize the max length of a file which is mapped, the larger files are not cached.
+     * @param checkInterval the milliseconds between two checks of a file against the file system.
+     */
+    public MappedStaticCache(long maxBytes, long maxFileSize, long checkInterval) {
+        Assert.isTrue(maxBytes > 0, "The maxBytes must be greater than 0.");
+        Assert.isTrue(maxFileSize > 0, "The maxFileSize must be greater than 0.");
+        Assert.isTrue(checkInterval >= 0, "The checkInterval cannot be negative.");
+        this.mMaxBytes = maxBytes;
+        this.mMaxFileSize = Math.min(maxFileSize, Math.min(maxBytes, Integer.MAX_VALUE));
+        this.mCheckInterval = checkInterval;
+    }
+
+    /**
+     * Get the mapped file, the file is mapped if it is not in the cache yet. Only call it to read the file, use
+     * {@link #peek(File)} to find out whether the file exists.
+     *
+     * @param file the file.
+     *
+     * @return the entry, or {@code null} if the file does not exist or it is too large to be cached.
+     */
+    @Nullable
+    public Entry get(@NonNull File file) {
+        long now = System.currentTimeMillis();
+        Entry entry = find(file, now, true);
+        if (entry != null) {
+            mHitCount.incrementAndGet();
+            return entry;
+        }
+
+        mMissCount.incrementAndGet();
+        String key;
+        try {
+            key = file.getCanonicalPath();
+        } catch (IOException e) {
+            return null;
+        }
+
+        // The file may be cached by another path which points to it.
+        synchronized (mEntries) {
+            entry = mEntries.get(key);
+            if (entry != null) {
+                addAlias(file.getPath(), entry);
+            }
+        }
+        if (entry != null) {
+            entry = find(file, now, true);
+            if (entry != null) {
+                return entry;
+            }
+        }
+
+        entry = map(file, key, now);
+        if (entry != null) {
+            put(file.getPath(), entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Get the file if it is in the cache, the file is not mapped if it is not.
+     *
+     * @param file the file.
+     *
+     * @return the entry, or {@code null} if the file is not in the cache.
+     */
+    @Nullable
+    public Entry peek(@NonNull File file) {
+        return find(file, System.currentTimeMillis(), false);
+    }
+
+    /**
+     * Find the entry of the file, it is dropped if the file changed.
+     *
+     * @param checkLength whether to check the length of the file even if it was checked in the interval.
+     */
+    private Entry find(File file, long now, boolean checkLength) {
+        Entry entry;
+        synchronized (mEntries) {
+            entry = mAliases.get(file.getPath());
+            if (entry != null) {
+                // Moves the entry to the end of the LRU.
+                mEntries.get(entry.mKey);
+            }
+        }
+        if (entry == null) {
+            return null;
+        }
+
+        if (now - entry.mCheckedAt < mCheckInterval) {
+            if (!checkLength || entry.mLength == file.length()) {
+                return entry;
+            }
+        } else if (entry.mLastModified == file.lastModified() && entry.mLength == file.length()) {
+            entry.mCheckedAt = now;
+            return entry;
+        }
+        synchronized (mEntries) {
+            if (mEntries.get(entry.mKey) == entry) {
+                remove(entry);
+            }
+        }
+        return null;
+    }
+
+    private Entry map(File file, String key, long now) {
+        if (!file.isFile()) {
+            return null;
+        }
+        long lastModified = file.lastModified();
+        long length = file.length();
+        if (length <= 0 || length > mMaxFileSize) {
+            return null;
+        }
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            FileChannel channel = randomAccessFile.getChannel();
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length).asReadOnlyBuffer();
+            return new Entry(key, file, buffer, length, lastModified, now);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void put(String path, Entry entry) {
+        synchronized (mEntries) {
+            Entry old = mEntries.get(entry.mKey);
+            if (old != null) {
+                remove(old);
+            }
+            mEntries.put(entry.mKey, entry);
+            mBytes += entry.mLength;
+            addAlias(path, entry);
+
+            // The mapped memory is released when the evicted buffers are collected.
+            Iterator<Map.Entry<String, Entry>> iterator = mEntries.entrySet().iterator();
+            while (mBytes > mMaxBytes && iterator.hasNext()) {
+                Entry eldest = iterator.next().getValue();
+                if (eldest == entry) {
+                    continue;
+                }
+                iterator.remove();
+                removeAliases(eldest);
+                mBytes -= eldest.mLength;
+                mEvictionCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Let the path find the entry, the path is dropped from the entry it pointed to before. Must hold the lock.
+     */
+    private void addAlias(String path, Entry entry) {
+        Entry old = mAliases.put(path, entry);
+        if (old != entry) {
+            if (old != null) {
+                old.mAliases.remove(path);
+            }
+            entry.mAliases.add(path);
+        }
+    }
+
+    /**
+     * Must hold the lock, and the entry must be in the cache.
+     */
+    private void remove(Entry entry) {
+        mEntries.remove(entry.mKey);
+        removeAliases(entry);
+        mBytes -= entry.mLength;
+    }
+
+    private void removeAliases(Entry entry) {
+        for (String path : entry.mAliases) {
+            if (mAliases.get(path) == entry) {
+                mAliases.remove(path);
+            }
+        }
+        entry.mAliases.clear();
+    }
+
+    /**
+     * Drop the file from the cache, whichever path it was cached by.
+     */
+    public void invalidate(@NonNull File file) {
+        String key;
+        try {
+            key = file.getCanonicalPath();
+        } catch (IOException e) {
+            key = null;
+        }
+        synchronized (mEntries) {
+            Entry entry = key == null ? null : mEntries.get(key);
+            if (entry == null) {
+                entry = mAliases.get(file.getPath());
+            }
+            if (entry != null) {
+                remove(entry);
+            }
+        }
+    }
+
+    /**
+     * Drop all the files from the cache.
+     */
+    public void clear() {
+        synchronized (mEntries) {
+            mEntries.clear();
+            mAliases.clear();
+            mBytes = 0;
+        }
+    }
+
+    /**
+     * Get the number of bytes of all the mapped files.
+     */
+    public long getBytes() {
+        synchronized (mEntries) {
+            return mBytes;
+        }
+    }
+
+    public long getHitCount() {
+        return mHitCount.get();
+    }
+
+    public long getMissCount() {
+        return mMissCount.get();
+    }
+
+    public long getEvictionCount() {
+        return mEvictionCount.get();
+    }
+
+    public static class Entry {
+
+        private final String mKey;
+        private final File mFile;
+        private final ByteBuffer mBuffer;
+        private final long mLength;
+        private final long mLastModified;
+        private volatile long mCheckedAt;
+        private final List<String> mAliases = new ArrayList<>(1);
+
+        private Entry(String key, File file, ByteBuffer buffer, long length, long lastModified, long checkedAt) {
+            this.mKey = key;
+            this.mFile = file;
+            this.mBuffer = buffer;
+            this.mLength = length;
+            this.mLastModified = lastModified;
+            this.mCheckedAt = checkedAt;
+        }
+
+        @NonNull
+        public File getFile() {
+            return mFile;
+        }
+
+        /**
+         * Get a read-only view of the mapped file, the view can be consumed by the caller.
+         */
+        @NonNull
+        public ByteBuffer getBuffer() {
+            return mBuffer.duplicate();
+        }
+
+        public long getLength() {
+            return mLength;
+        }
+
+        public long getLastModified() {
+            return mLastModified;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2022 ISNing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.andserver.framework.website;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.yanzhenjie.andserver.util.MediaType;
+
+import java.io.File;
+
+/**
+ * The resource which a {@link BasicWebsite} found for the path of a request. It is resolved in
+ * {@code intercept(HttpRequest)} and kept in the request, so the ETag, the last modified time and the body are served
+ * without looking up the file system again.
+ */
+public class ResolvedResource {
+
+    /**
+     * Create the resource of a file, the length and the last modified time are read from the file system once.
+     *
+     * @param owner the website which resolved it.
+     * @param path the path of the request.
+     * @param file the file or directory.
+     * @param index whether the file is the index file of the requested directory.
+     */
+    @NonNull
+    public static ResolvedResource ofFile(@NonNull Website owner, @NonNull String path, @NonNull File file,
+                                          boolean index) {
+        boolean directory = file.isDirectory();
+        long length = directory ? 0 : file.length();
+        return new ResolvedResource(owner, path, file, null, index, directory, length, file.lastModified());
+    }
+
+    /**
+     * Create the resource of a file whose length and last modified time are known.
+     *
+     * @param owner the website which resolved it.
+     * @param path the path of the request.
+     * @param file the file.
+     * @param index whether the file is the index file of the requested directory.
+     * @param length the length of the file.
+     * @param lastModified the last modified time of the file.
+     */
+    @NonNull
+    public static ResolvedResource ofFile(@NonNull Website owner, @NonNull String path, @NonNull File file,
+                                          boolean index, long length, long lastModified) {
+        return new ResolvedResource(owner, path, file, null, index, false, length, lastModified);
+    }
+
+    /**
+     * Create the resource of an asset.
+     *
+     * @param owner the website which resolved it.
+     * @param path the path of the request.
+     * @param assetPath the path of the asset.
+     * @param index whether the asset is the index file of the requested directory.
+     * @param length the length of the asset.
+     * @param lastModified the last modified time of the asset.
+     */
+    @NonNull
+    public static ResolvedResource ofAsset(@NonNull Website owner, @NonNull String path, @NonNull String assetPath,
+                                           boolean index, long length, long lastModified) {
+        return new ResolvedResource(owner, path, null, assetPath, index, false, length, lastModified);
+    }
+
+    private final Website mOwner;
+    private final String mPath;
+    private final File mFile;
+    private final String mAssetPath;
+    private final boolean isIndex;
+    private final boolean isDirectory;
+    private final long mLength;
+    private final long mLastModified;
+
+    private String mETag;
+    private MediaType mMediaType;
+
+    private String mContentEncoding;
+    private ResolvedResource mEncodedResource;
+    private boolean isVaryEncoding;
+
+    private ResolvedResource(Website owner, String path, File file, String assetPath, boolean index,
+                             boolean directory, long length, long lastModified) {
+        this.mOwner = owner;
+        this.mPath = path;
+        this.mFile = file;
+        this.mAssetPath = assetPath;
+        this.isIndex = index;
+        this.isDirectory = directory;
+        this.mLength = length;
+        this.mLastModified = lastModified;
+    }
+
+    @NonNull
+    public Website getOwner() {
+        return mOwner;
+    }
+
+    /**
+     * Get the path of the request which the resource is resolved for.
+     */
+    @NonNull
+    public String getPath() {
+        return mPath;
+    }
+
+    /**
+     * Get the file, it is {@code null} for an asset.
+     */
+    @Nullable
+    public File getFile() {
+        return mFile;
+    }
+
+    /**
+     * Get the path of the asset, it is {@code null} for a file.
+     */
+    @Nullable
+    public String getAssetPath() {
+        return mAssetPath;
+    }
+
+    /**
+     * Whether the resource is the index file of the requested directory.
+     */
+    public boolean isIndex() {
+        return isIndex;
+    }
+
+    public boolean isDirectory() {
+        return isDirectory;
+    }
+
+    public long getLength() {
+        return mLength;
+    }
+
+    public long getLastModified() {
+        return mLastModified;
+    }
+
+    @Nullable
+    public String getETag() {
+        return mETag;
+    }
+
+    public void setETag(@Nullable String eTag) {
+        this.mETag = eTag;
+    }
+
+    /**
+     * Get the media type of the resource, it is computed from the name on the first call.
+     */
+    @Nullable
+    public MediaType getMediaType() {
+        if (mMediaType == null && !isDirectory) {
+            mMediaType = MediaType.getFileMediaType(mFile != null ? mFile.getName() : mAssetPath);
+        }
+        return mMediaType;
+    }
+
+    /**
+     * Get the content coding which the resource is sent with, it is {@code null} if it is sent as it is.
+     */
+    @Nullable
+    public String getContentEncoding() {
+        return mContentEncoding;
+    }
+
+    /**
+     * Get the precompressed variant which is sent instead of the resource, it is {@code null} if the resource is sent
+     * as it is or it is compressed while it is sent.
+     */
+    @Nullable
+    public ResolvedResource getEncodedResource() {
+        return mEncodedResource;
+    }
+
+    /**
+     * Set the content coding of the response.
+     *
+     * @param contentEncoding the content coding, e.g. {@code gzip}.
+     * @param encodedResource the precompressed variant, or {@code null} to compress the resource while it is sent.
+     */
+    public void setContentEncoding(@NonNull String contentEncoding, @Nullable ResolvedResource encodedResource) {
+        this.mContentEncoding = contentEncoding;
+        this.mEncodedResource = encodedResource;
+    }
+
+    /**
+     * Whether the response depends on the {@code Accept-Encoding} of the request.
+     */
+    public boolean isVaryEncoding() {
+        return isVaryEncoding;
+    }
+
+    public void setVaryEncoding(boolean varyEncoding) {
+        this.isVaryEncoding = varyEncoding;
+    }
+}
@@ -18,8 +18,10 @@ package com.yanzhenjie.andserver.framework.website;
 import android.text.TextUtils;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.yanzhenjie.andserver.error.NotFoundException;
+import com.yanzhenjie.andserver.framework.body.ByteBufferBody;
 import com.yanzhenjie.andserver.framework.body.FileBody;
 import com.yanzhenjie.andserver.framework.body.StringBody;
 import com.yanzhenjie.andserver.http.HttpRequest;
@@ -27,10 +29,12 @@ import com.yanzhenjie.andserver.http.HttpResponse;
 import com.yanzhenjie.andserver.http.ResponseBody;
 import com.yanzhenjie.andserver.util.Assert;
 import com.yanzhenjie.andserver.util.DigestUtils;
+import com.yanzhenjie.andserver.util.MediaType;
 import com.yanzhenjie.andserver.util.Patterns;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Created by Zhenjie Yan on 2018/9/7.
@@ -38,6 +42,7 @@ import java.io.IOException;
 public class StorageWebsite extends BasicWebsite implements Patterns {
 
     private final String mRootPath;
+    private final MappedStaticCache mStaticCache;
 
     /**
      * Create a website object.
@@ -55,37 +60,52 @@ public class StorageWebsite extends BasicWebsite implements Patterns {
      * @param indexFileName the default file name for each directory, e.g. index.html.
      */
     public StorageWebsite(@NonNull String rootPath, @NonNull String indexFileName) {
+        this(rootPath, indexFileName, null);
+    }
+
+    /**
+     * Create a website object.
+     *
+     * @param rootPath website root directory.
+     * @param indexFileName the default file name for each directory, e.g. index.html.
+     * @param staticCache the cache which serves the small files from mapped memory, or {@code null} to read the
+     *     files for every request. Only use it if the files are never rewritten in place, see
+     *     {@link MappedStaticCache}.
+     */
+    public StorageWebsite(@NonNull String rootPath, @NonNull String indexFileName,
+                          @Nullable MappedStaticCache staticCache) {
         super(indexFileName);
         Assert.isTrue(!TextUtils.isEmpty(rootPath), "The rootPath cannot be empty.");
         Assert.isTrue(rootPath.matches(PATH), "The format of [%s] is wrong, it should be like [/root/project].");
 
         this.mRootPath = rootPath;
+        this.mStaticCache = staticCache;
     }
 
     @Override
     public boolean intercept(@NonNull HttpRequest request) {
-        String httpPath = request.getPath();
-        File file = findPathFile(httpPath);
-        return file != null;
+        return resolve(request) != null;
     }
 
     @Override
     public String getETag(@NonNull HttpRequest request) throws Throwable {
-        String httpPath = request.getPath();
-        File file = findPathFile(httpPath);
-        if (file != null) {
-            String tag = file.getAbsolutePath() + file.lastModified();
-            return DigestUtils.md5DigestAsHex(tag);
+        ResolvedResource resource = resolve(request);
+        if (resource != null) {
+            if (resource.getETag() == null) {
+                ResolvedResource content = getContentResource(resource);
+                String tag = content.getFile().getAbsolutePath() + content.getLastModified();
+                resource.setETag(getEncodedETag(resource, DigestUtils.md5DigestAsHex(tag)));
+            }
+            return resource.getETag();
         }
         return null;
     }
 
     @Override
     public long getLastModified(@NonNull HttpRequest request) throws Throwable {
-        String httpPath = request.getPath();
-        File file = findPathFile(httpPath);
-        if (file != null) {
-            return file.lastModified();
+        ResolvedResource resource = resolve(request);
+        if (resource != null) {
+            return resource.getLastModified();
         }
         return -1;
     }
@@ -94,43 +114,78 @@ public class StorageWebsite extends BasicWebsite implements Patterns {
     @Override
     public ResponseBody getBody(@NonNull HttpRequest request, @NonNull HttpResponse response) throws IOException {
         String httpPath = request.getPath();
-        File targetFile = new File(mRootPath, httpPath);
-        if (targetFile.exists() && targetFile.isFile()) {
-            return new FileBody(targetFile);
+        ResolvedResource resource = resolve(request);
+        if (resource == null) {
+            throw new NotFoundException(httpPath);
         }
 
-        File indexFile = new File(targetFile, getIndexFileName());
-        if (indexFile.exists() && indexFile.isFile()) {
-            if (!httpPath.endsWith(File.separator)) {
-                String redirectPath = addEndSlash(httpPath);
-                String query = queryString(request);
-                response.sendRedirect(redirectPath + "?" + query);
-                return new StringBody("");
+        if (resource.isIndex() && !httpPath.endsWith(File.separator)) {
+            String redirectPath = addEndSlash(httpPath);
+            String query = queryString(request);
+            response.sendRedirect(redirectPath + "?" + query);
+            return new StringBody("");
+        }
+
+        return getResourceBody(request, response, resource);
+    }
+
+    @Nullable
+    @Override
+    protected ResponseBody getContentBody(@NonNull ResolvedResource content, @Nullable MediaType mediaType,
+                                          long position, long length) {
+        File file = content.getFile();
+        if (mStaticCache != null) {
+            MappedStaticCache.Entry entry = mStaticCache.get(file);
+            if (entry != null) {
+                ByteBuffer buffer = entry.getBuffer();
+                if (length < 0) {
+                    return new ByteBufferBody(buffer, mediaType);
+                }
+                if (position + length <= buffer.remaining()) {
+                    buffer.limit((int) (position + length));
+                    buffer.position((int) position);
+                    return new ByteBufferBody(buffer, mediaType);
+                }
             }
+        }
+        return new FileBody(file, mediaType, position, length);
+    }
 
-            return new FileBody(indexFile);
+    @Nullable
+    @Override
+    protected ResolvedResource findResource(@NonNull String httpPath) {
+        File targetFile = new File(mRootPath, httpPath);
+        ResolvedResource resource = findFile(httpPath, targetFile, false);
+        if (resource != null) {
+            return resource;
         }
 
-        throw new NotFoundException(httpPath);
+        File indexFile = new File(targetFile, getIndexFileName());
+        return findFile(httpPath, indexFile, true);
+    }
+
+    @Nullable
+    @Override
+    protected ResolvedResource findEncodedResource(@NonNull ResolvedResource resource, @NonNull String suffix) {
+        File file = new File(resource.getFile().getPath() + suffix);
+        return findFile(resource.getPath(), file, resource.isIndex());
     }
 
     /**
-     * Find the path specified resource.
-     *
-     * @param httpPath path.
-     *
-     * @return return if the file is found.
+     * Find the file, a file in the cache is not checked against the file system. The file is not mapped here, it is
+     * mapped only when its content is read.
      */
-    private File findPathFile(@NonNull String httpPath) {
-        File targetFile = new File(mRootPath, httpPath);
-        if (targetFile.exists() && targetFile.isFile()) {
-            return targetFile;
+    private ResolvedResource findFile(String httpPath, File file, boolean index) {
+        if (mStaticCache != null) {
+            MappedStaticCache.Entry entry = mStaticCache.peek(file);
+            if (entry != null) {
+                return ResolvedResource.ofFile(this, httpPath, file, index, entry.getLength(),
+                    entry.getLastModified());
+            }
         }
-
-        File indexFile = new File(targetFile, getIndexFileName());
-        if (indexFile.exists() && indexFile.isFile()) {
-            return indexFile;
+        if (file.isFile()) {
+            return ResolvedResource.ofFile(this, httpPath, file, index);
         }
         return null;
     }
-}
\ No newline at end of file
+}
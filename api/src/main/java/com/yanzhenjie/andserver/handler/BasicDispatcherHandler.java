@@ -32,6 +32,7 @@ import com.yanzhenjie.andserver.framework.MessageConverter;
 import com.yanzhenjie.andserver.framework.ModifiedInterceptor;
 import com.yanzhenjie.andserver.framework.body.StringBody;
 import com.yanzhenjie.andserver.framework.config.Multipart;
+import com.yanzhenjie.andserver.framework.handler.AdapterIndex;
 import com.yanzhenjie.andserver.framework.handler.HandlerAdapter;
 import com.yanzhenjie.andserver.framework.handler.RequestHandler;
 import com.yanzhenjie.andserver.framework.view.View;
@@ -72,21 +73,45 @@ public class BasicDispatcherHandler implements DispatcherHandler {
     private ExceptionResolver mResolver;
     private Multipart mMultipart;
 
+    private boolean isRouteIndex;
+    private volatile AdapterIndex mAdapterIndex;
+    private final DispatchStats mDispatchStats = new DispatchStats();
+
     public BasicDispatcherHandler(Context context) {
+        this(context, new StandardSessionManager(context));
+    }
+
+    /**
+     * Create a dispatcher.
+     *
+     * @param context the context.
+     * @param sessionManager the sessions of the server, it is shared by all the requests.
+     */
+    public BasicDispatcherHandler(Context context, @NonNull SessionManager sessionManager) {
+        Assert.notNull(sessionManager, "The sessionManager cannot be null.");
         this.mContext = context;
-        this.mSessionManager = new StandardSessionManager(context);
+        this.mSessionManager = sessionManager;
         this.mViewResolver = new ViewResolver();
         this.mResolver = new ExceptionResolver.ResolverWrapper(ExceptionResolver.DEFAULT);
 
         this.mInterceptorList.add(new ModifiedInterceptor());
     }
 
+    /**
+     * Get the sessions of the server.
+     */
+    @NonNull
+    public SessionManager getSessionManager() {
+        return mSessionManager;
+    }
+
     @Override
     public void addAdapter(@NonNull HandlerAdapter adapter) {
         Assert.notNull(adapter, "The adapter cannot be null.");
 
         if (!mAdapterList.contains(adapter)) {
             mAdapterList.add(adapter);
+            mAdapterIndex = null;
         }
     }
 
@@ -117,6 +142,22 @@ public class BasicDispatcherHandler implements DispatcherHandler {
         this.mMultipart = multipart;
     }
 
+    /**
+     * Set whether to find the adapter through one route index of all the {@code MappingAdapter}s, the other adapters
+     * are only asked when the index misses.
+     */
+    public void setRouteIndex(boolean routeIndex) {
+        this.isRouteIndex = routeIndex;
+    }
+
+    /**
+     * Get the counters of the adapter lookups.
+     */
+    @NonNull
+    public DispatchStats getDispatchStats() {
+        return mDispatchStats;
+    }
+
     @Override
     @RestrictTo(RestrictTo.Scope.LIBRARY)
     public void handle(HttpRequest request, HttpResponse response) {
@@ -197,12 +238,42 @@ public class BasicDispatcherHandler implements DispatcherHandler {
      * @return the {@link RequestHandler}, or {@code null} if no handler could be found.
      */
     private HandlerAdapter getHandlerAdapter(HttpRequest request) {
-        for (HandlerAdapter ha : mAdapterList) {
-            if (ha.intercept(request)) {
-                return ha;
+        int probes = 0;
+        try {
+            List<HandlerAdapter> adapterList = mAdapterList;
+            if (isRouteIndex) {
+                AdapterIndex index = getAdapterIndex();
+                HandlerAdapter ha = index.find(request);
+                if (ha != null) {
+                    probes++;
+                    if (ha.intercept(request)) {
+                        return ha;
+                    }
+                }
+                adapterList = index.getFallbacks();
+            }
+
+            for (HandlerAdapter ha : adapterList) {
+                probes++;
+                if (ha.intercept(request)) {
+                    return ha;
+                }
+            }
+            return null;
+        } finally {
+            mDispatchStats.record(probes);
+        }
+    }
+
+    private AdapterIndex getAdapterIndex() {
+        if (mAdapterIndex == null) {
+            synchronized (this) {
+                if (mAdapterIndex == null) {
+                    mAdapterIndex = new AdapterIndex(mAdapterList);
+                }
             }
         }
-        return null;
+        return mAdapterIndex;
     }
 
     /**
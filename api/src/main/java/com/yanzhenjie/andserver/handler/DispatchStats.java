@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2022 ISNing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.andserver.handler;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the adapter lookups of a {@link BasicDispatcherHandler}.
+ */
+public class DispatchStats {
+
+    private final AtomicLong mDispatchCount = new AtomicLong();
+    private final AtomicLong mProbeCount = new AtomicLong();
+    private final AtomicInteger mMaxProbeCount = new AtomicInteger();
+
+    DispatchStats() {
+    }
+
+    void record(int probes) {
+        mDispatchCount.incrementAndGet();
+        mProbeCount.addAndGet(probes);
+
+        int max = mMaxProbeCount.get();
+        while (probes > max && !mMaxProbeCount.compareAndSet(max, probes)) {
+            max = mMaxProbeCount.get();
+        }
+    }
+
+    /**
+     * Get the number of adapter lookups.
+     */
+    public long getDispatchCount() {
+        return mDispatchCount.get();
+    }
+
+    /**
+     * Get the number of {@code HandlerAdapter#intercept(HttpRequest)} calls of all the lookups.
+     */
+    public long getProbeCount() {
+        return mProbeCount.get();
+    }
+
+    /**
+     * Get the largest number of adapters asked by a single lookup.
+     */
+    public int getMaxProbeCount() {
+        return mMaxProbeCount.get();
+    }
+}
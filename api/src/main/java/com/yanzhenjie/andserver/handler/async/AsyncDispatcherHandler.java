@@ -18,112 +18,107 @@ package com.yanzhenjie.andserver.handler.async;
 import android.content.Context;
 
 import androidx.annotation.NonNull;
-import androidx.annotation.Nullable;
-import androidx.annotation.RestrictTo;
 
 import com.yanzhenjie.andserver.AndServer;
-import com.yanzhenjie.andserver.framework.ExceptionResolver;
-import com.yanzhenjie.andserver.framework.HandlerInterceptor;
-import com.yanzhenjie.andserver.framework.MessageConverter;
-import com.yanzhenjie.andserver.framework.config.Multipart;
-import com.yanzhenjie.andserver.framework.handler.HandlerAdapter;
 import com.yanzhenjie.andserver.handler.BasicDispatcherHandler;
-import com.yanzhenjie.andserver.handler.DispatcherHandler;
-import com.yanzhenjie.andserver.http.HttpRequest;
-import com.yanzhenjie.andserver.http.HttpResponse;
-import com.yanzhenjie.andserver.http.RequestDispatcher;
-import com.yanzhenjie.andserver.http.ResponseBody;
-import com.yanzhenjie.andserver.http.StandardContext;
-import com.yanzhenjie.andserver.http.StandardRequest;
-import com.yanzhenjie.andserver.http.StandardResponse;
 import com.yanzhenjie.andserver.http.session.SessionManager;
 import com.yanzhenjie.andserver.http.session.StandardSessionManager;
 
-import org.apache.hc.core5.http.ContentType;
-import org.apache.hc.core5.http.EntityDetails;
-import org.apache.hc.core5.http.HttpException;
-import org.apache.hc.core5.http.HttpStatus;
-import org.apache.hc.core5.http.impl.nio.DefaultHttpResponseFactory;
-import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
-import org.apache.hc.core5.http.nio.AsyncRequestConsumer;
-import org.apache.hc.core5.http.nio.AsyncServerRequestHandler;
-import org.apache.hc.core5.http.nio.entity.BasicAsyncEntityConsumer;
-import org.apache.hc.core5.http.nio.support.AbstractAsyncRequesterConsumer;
-import org.apache.hc.core5.http.nio.support.AbstractServerExchangeHandler;
-import org.apache.hc.core5.http.nio.support.BasicResponseProducer;
-
-import java.io.IOException;
+import org.apache.hc.core5.function.Supplier;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.nio.AsyncEntityConsumer;
+import org.apache.hc.core5.http.nio.AsyncServerExchangeHandler;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * The routing core of the async servers. It is created and registered once per server, then every exchange gets a
+ * lightweight {@link AsyncExchangeHandler} which points back to it.
+ *
  * Created by ISNing on 2022/4/26.
  */
-public class AsyncDispatcherHandler extends AbstractServerExchangeHandler<StandardRequest> implements DispatcherHandler {
+public class AsyncDispatcherHandler extends BasicDispatcherHandler implements Supplier<AsyncServerExchangeHandler> {
 
-    public static final String SUB_TAG = "ClassicDispatcherHandler";
+    public static final String SUB_TAG = "AsyncDispatcherHandler";
     public static final String TAG = AndServer.genAndServerTag(SUB_TAG);
 
-    private final SessionManager mSessionManager;
-    private final DispatcherHandler mDispatcherHandler;
+    private static final int BODY_WRITER_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private final File mBodyDirectory;
+    private final ExecutorService mBodyWriter;
+    private WorkerPool mWorkerPool;
+    private int mRequestBodyThreshold = SpillingEntityConsumer.DEFAULT_THRESHOLD;
 
     public AsyncDispatcherHandler(Context context) {
-        super();
-        this.mDispatcherHandler = new BasicDispatcherHandler(context);
-        this.mSessionManager = new StandardSessionManager(context);
+        this(context, new StandardSessionManager(context));
     }
 
-    @Override
-    protected AsyncRequestConsumer<StandardRequest> supplyConsumer(org.apache.hc.core5.http.HttpRequest request, EntityDetails entityDetails, org.apache.hc.core5.http.protocol.HttpContext context) throws HttpException {
-        return new AbstractAsyncRequesterConsumer<StandardRequest, byte[]>(new BasicAsyncEntityConsumer()) {
-            @Override
-            protected StandardRequest buildResult(org.apache.hc.core5.http.HttpRequest request, byte[] entity, ContentType contentType) {
-                return new StandardRequest(request, entity == null ? null : new ByteArrayEntity(entity, contentType), new StandardContext(context), AsyncDispatcherHandler.this, mSessionManager);
-            }
-        };
+    public AsyncDispatcherHandler(Context context, @NonNull SessionManager sessionManager) {
+        super(context, sessionManager);
+        this.mBodyDirectory = context.getCacheDir();
+        this.mBodyWriter = newBodyWriter();
+        this.mWorkerPool = ExecutionMode.inline().newWorkerPool();
     }
 
-    @Override
-    protected void handle(StandardRequest requestWrapped, AsyncServerRequestHandler.ResponseTrigger responseTrigger, org.apache.hc.core5.http.protocol.HttpContext context) throws HttpException, IOException {
-        org.apache.hc.core5.http.HttpResponse response = DefaultHttpResponseFactory.INSTANCE.newHttpResponse(HttpStatus.SC_OK);
-        HttpResponse responseWrapped = new StandardResponse(response);
-        mDispatcherHandler.handle(requestWrapped, responseWrapped);
-        ResponseBody body = responseWrapped.getBody();
-        responseTrigger.submitResponse(new BasicResponseProducer(response, body == null ? null : body.toEntityProducer()), context);
+    /**
+     * Set the workers which run the dispatcher, the requests are dispatched on the IO reactor thread by default.
+     */
+    public void setWorkerPool(@NonNull WorkerPool workerPool) {
+        this.mWorkerPool = workerPool;
     }
 
-    @Override
-    @RestrictTo(RestrictTo.Scope.LIBRARY)
-    public void handle(HttpRequest request, HttpResponse response) {
-        mDispatcherHandler.handle(request, response);
+    @NonNull
+    public WorkerPool getWorkerPool() {
+        return mWorkerPool;
     }
 
-    @Override
-    public void addAdapter(@NonNull HandlerAdapter adapter) {
-        mDispatcherHandler.addAdapter(adapter);
+    /**
+     * Set the max number of bytes of a request body kept in memory, the larger bodies are spilled to temp files.
+     */
+    public void setRequestBodyThreshold(int threshold) {
+        this.mRequestBodyThreshold = threshold;
     }
 
-    @Override
-    public void addInterceptor(@NonNull HandlerInterceptor interceptor) {
-        mDispatcherHandler.addInterceptor(interceptor);
+    public int getRequestBodyThreshold() {
+        return mRequestBodyThreshold;
     }
 
-    @Override
-    public void setConverter(MessageConverter converter) {
-        mDispatcherHandler.setConverter(converter);
+    /**
+     * Create the consumer of a request body.
+     */
+    @NonNull
+    AsyncEntityConsumer<HttpEntity> newEntityConsumer() {
+        return new SpillingEntityConsumer(mRequestBodyThreshold, mBodyDirectory, mBodyWriter);
     }
 
-    @Override
-    public void setResolver(@NonNull ExceptionResolver resolver) {
-        mDispatcherHandler.setResolver(resolver);
+    /**
+     * Stop the workers and the writer of the request bodies, the tasks which have been accepted are still run.
+     */
+    public void shutdown() {
+        mWorkerPool.shutdown();
+        mBodyWriter.shutdown();
     }
 
+    /**
+     * Create the handler for a single exchange, it only holds references to this dispatcher.
+     */
     @Override
-    public void setMultipart(Multipart multipart) {
-        mDispatcherHandler.setMultipart(multipart);
+    public AsyncServerExchangeHandler get() {
+        return new AsyncExchangeHandler(this, getSessionManager(), mWorkerPool);
     }
 
-    @Override
-    @Nullable
-    public RequestDispatcher getRequestDispatcher(HttpRequest request, String path) {
-        return mDispatcherHandler.getRequestDispatcher(request, path);
+    private static ExecutorService newBodyWriter() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(BODY_WRITER_THREADS, BODY_WRITER_THREADS, 60,
+            TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "AndServer-Body-Writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2022 ISNing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.andserver.handler.async;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.yanzhenjie.andserver.AndServer;
+import com.yanzhenjie.andserver.error.ServerInternalException;
+import com.yanzhenjie.andserver.http.HttpResponse;
+import com.yanzhenjie.andserver.http.ResponseBody;
+import com.yanzhenjie.andserver.http.StandardContext;
+import com.yanzhenjie.andserver.http.StandardRequest;
+import com.yanzhenjie.andserver.http.StandardResponse;
+import com.yanzhenjie.andserver.http.session.SessionManager;
+
+import org.apache.hc.core5.concurrent.CallbackContribution;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.impl.nio.DefaultHttpResponseFactory;
+import org.apache.hc.core5.http.nio.AsyncEntityConsumer;
+import org.apache.hc.core5.http.nio.AsyncRequestConsumer;
+import org.apache.hc.core5.http.nio.AsyncResponseProducer;
+import org.apache.hc.core5.http.nio.AsyncServerRequestHandler;
+import org.apache.hc.core5.http.nio.CapacityChannel;
+import org.apache.hc.core5.http.nio.support.AbstractServerExchangeHandler;
+import org.apache.hc.core5.http.nio.support.BasicResponseProducer;
+import org.apache.hc.core5.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The handler of a single exchange, it holds nothing but references to the shared {@link AsyncDispatcherHandler}
+ * and the body of its request.
+ */
+public class AsyncExchangeHandler extends AbstractServerExchangeHandler<StandardRequest> {
+
+    private static final String TAG = AndServer.genAndServerTag("AsyncExchangeHandler");
+
+    private final AsyncDispatcherHandler mDispatcherHandler;
+    private final SessionManager mSessionManager;
+    private final WorkerPool mWorkerPool;
+
+    /**
+     * Whether the exchange has released its resources, e.g. the client went away while the request waited for a
+     * worker. The response of a released exchange is never sent, so it is not submitted.
+     */
+    private volatile boolean isReleased;
+
+    public AsyncExchangeHandler(@NonNull AsyncDispatcherHandler dispatcherHandler,
+                                @NonNull SessionManager sessionManager, @NonNull WorkerPool workerPool) {
+        this.mDispatcherHandler = dispatcherHandler;
+        this.mSessionManager = sessionManager;
+        this.mWorkerPool = workerPool;
+    }
+
+    @Override
+    protected AsyncRequestConsumer<StandardRequest> supplyConsumer(org.apache.hc.core5.http.HttpRequest request,
+                                                                   EntityDetails entityDetails,
+                                                                   HttpContext context) throws HttpException {
+        return new RequestConsumer();
+    }
+
+    @Override
+    protected void handle(StandardRequest requestWrapped, AsyncServerRequestHandler.ResponseTrigger responseTrigger,
+                          HttpContext context) throws HttpException, IOException {
+        if (mWorkerPool.isInline()) {
+            execute(requestWrapped, responseTrigger, context);
+            return;
+        }
+
+        boolean accepted = mWorkerPool.execute(() -> execute(requestWrapped, responseTrigger, context));
+        if (!accepted) {
+            responseTrigger.submitResponse(new BasicResponseProducer(HttpStatus.SC_SERVICE_UNAVAILABLE,
+                "The server is too busy to handle the request."), context);
+        }
+    }
+
+    /**
+     * Dispatch the request, the exchange always gets a response or fails, so the client never waits for nothing.
+     */
+    private void execute(StandardRequest requestWrapped, AsyncServerRequestHandler.ResponseTrigger responseTrigger,
+                         HttpContext context) {
+        if (isReleased) {
+            return;
+        }
+
+        try {
+            AsyncResponseProducer producer;
+            try {
+                producer = dispatch(requestWrapped);
+            } catch (Throwable e) {
+                Log.e(TAG, "Failed to dispatch the request.", e);
+                producer = new BasicResponseProducer(HttpStatus.SC_INTERNAL_SERVER_ERROR,
+                    new ServerInternalException(e).getMessage());
+            }
+            if (isReleased) {
+                producer.releaseResources();
+                return;
+            }
+            responseTrigger.submitResponse(producer, context);
+        } catch (Throwable e) {
+            failed(e instanceof Exception ? (Exception) e : new ServerInternalException(e));
+        }
+    }
+
+    private AsyncResponseProducer dispatch(StandardRequest requestWrapped) {
+        org.apache.hc.core5.http.HttpResponse response = DefaultHttpResponseFactory.INSTANCE.newHttpResponse(HttpStatus.SC_OK);
+        HttpResponse responseWrapped = new StandardResponse(response);
+        mDispatcherHandler.handle(requestWrapped, responseWrapped);
+        ResponseBody body = responseWrapped.getBody();
+        return new BasicResponseProducer(response, body == null ? null : body.toEntityProducer());
+    }
+
+    /**
+     * Consumes the request and its body. It is released exactly once when the exchange ends, after the response
+     * which may stream the body, e.g. echoing the request, so the body is closed by its consumer then.
+     */
+    private class RequestConsumer implements AsyncRequestConsumer<StandardRequest> {
+
+        private final AtomicReference<AsyncEntityConsumer<HttpEntity>> mEntityConsumer = new AtomicReference<>();
+
+        @Override
+        public void consumeRequest(org.apache.hc.core5.http.HttpRequest request, EntityDetails entityDetails,
+                                   HttpContext context, FutureCallback<StandardRequest> resultCallback)
+            throws HttpException, IOException {
+            if (entityDetails == null) {
+                resultCallback.completed(newRequest(request, null, context));
+                return;
+            }
+
+            AsyncEntityConsumer<HttpEntity> entityConsumer = mDispatcherHandler.newEntityConsumer();
+            mEntityConsumer.set(entityConsumer);
+            entityConsumer.streamStart(entityDetails, new CallbackContribution<HttpEntity>(resultCallback) {
+                @Override
+                public void completed(HttpEntity entity) {
+                    resultCallback.completed(newRequest(request, entity, context));
+                }
+            });
+        }
+
+        private StandardRequest newRequest(org.apache.hc.core5.http.HttpRequest request, HttpEntity entity,
+                                           HttpContext context) {
+            return new StandardRequest(request, entity, new StandardContext(context), mDispatcherHandler,
+                mSessionManager);
+        }
+
+        @Override
+        public void updateCapacity(CapacityChannel capacityChannel) throws IOException {
+            mEntityConsumer.get().updateCapacity(capacityChannel);
+        }
+
+        @Override
+        public void consume(ByteBuffer src) throws IOException {
+            mEntityConsumer.get().consume(src);
+        }
+
+        @Override
+        public void streamEnd(List<? extends Header> trailers) throws HttpException, IOException {
+            mEntityConsumer.get().streamEnd(trailers);
+        }
+
+        @Override
+        public void failed(Exception cause) {
+            releaseResources();
+        }
+
+        @Override
+        public void releaseResources() {
+            isReleased = true;
+            AsyncEntityConsumer<HttpEntity> entityConsumer = mEntityConsumer.getAndSet(null);
+            if (entityConsumer != null) {
+                entityConsumer.releaseResources();
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2022 ISNing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.andserver.handler.async;
+
+import androidx.annotation.NonNull;
+
+import com.yanzhenjie.andserver.util.Assert;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Where the async servers run the dispatcher of a request, it is {@link #inline()} by default.
+ */
+public final class ExecutionMode {
+
+    public enum Type {
+        /**
+         * On the IO reactor thread which received the request.
+         */
+        INLINE,
+        /**
+         * On a bounded pool of worker threads.
+         */
+        POOL,
+        /**
+         * On a new virtual thread for each request.
+         */
+        VIRTUAL_THREAD
+    }
+
+    private static final int DEFAULT_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors() * 2);
+    private static final int DEFAULT_QUEUE_CAPACITY = 256;
+
+    /**
+     * Run the dispatcher on the IO reactor thread. A slow handler stalls every connection of that reactor.
+     */
+    @NonNull
+    public static ExecutionMode inline() {
+        return new ExecutionMode(Type.INLINE, 0, 0);
+    }
+
+    /**
+     * Run the dispatcher on a pool of worker threads with the default size.
+     */
+    @NonNull
+    public static ExecutionMode pool() {
+        return pool(DEFAULT_THREADS, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Run the dispatcher on a pool of worker threads, the requests which exceed the queue are answered with
+     * {@code 503 Service Unavailable}.
+     *
+     * @param threads the max number of worker threads.
+     * @param queueCapacity the max number of requests waiting for a worker thread.
+     */
+    @NonNull
+    public static ExecutionMode pool(int threads, int queueCapacity) {
+        Assert.isTrue(threads > 0, "The threads must be greater than 0.");
+        Assert.isTrue(queueCapacity > 0, "The queueCapacity must be greater than 0.");
+        return new ExecutionMode(Type.POOL, threads, queueCapacity);
+    }
+
+    /**
+     * Run the dispatcher on a new virtual thread for each request. It falls back to the default {@link #pool()} where
+     * the runtime has no virtual threads.
+     */
+    @NonNull
+    public static ExecutionMode virtualThread() {
+        return new ExecutionMode(Type.VIRTUAL_THREAD, DEFAULT_THREADS, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    private final Type mType;
+    private final int mThreads;
+    private final int mQueueCapacity;
+
+    private ExecutionMode(Type type, int threads, int queueCapacity) {
+        this.mType = type;
+        this.mThreads = threads;
+        this.mQueueCapacity = queueCapacity;
+    }
+
+    @NonNull
+    public Type getType() {
+        return mType;
+    }
+
+    public int getThreads() {
+        return mThreads;
+    }
+
+    public int getQueueCapacity() {
+        return mQueueCapacity;
+    }
+
+    /**
+     * Create the workers of a server run, they should be shut down when the server stops.
+     */
+    @NonNull
+    public WorkerPool newWorkerPool() {
+        switch (mType) {
+            case POOL: {
+                return new WorkerPool(newThreadPool());
+            }
+            case VIRTUAL_THREAD: {
+                ExecutorService service = newVirtualThreadExecutor();
+                return new WorkerPool(service == null ? newThreadPool() : service);
+            }
+            case INLINE:
+            default: {
+                return new WorkerPool(null);
+            }
+        }
+    }
+
+    private ExecutorService newThreadPool() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(mThreads, mThreads, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(mQueueCapacity), new WorkerThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method method = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+
+        private static final AtomicInteger POOL_NUMBER = new AtomicInteger();
+
+        private final int mPoolNumber = POOL_NUMBER.incrementAndGet();
+        private final AtomicInteger mThreadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            String name = "AndServer-Worker-" + mPoolNumber + "-" + mThreadNumber.incrementAndGet();
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
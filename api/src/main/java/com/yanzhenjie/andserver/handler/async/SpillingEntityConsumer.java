@@ -0,0 +1,387 @@
+/*
+ * Copyright (C) 2022 ISNing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.andserver.handler.async;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.yanzhenjie.andserver.AndServer;
+import com.yanzhenjie.andserver.util.BufferPool;
+
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.io.entity.AbstractHttpEntity;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.apache.hc.core5.http.nio.AsyncEntityConsumer;
+import org.apache.hc.core5.http.nio.CapacityChannel;
+import org.apache.hc.core5.util.ByteArrayBuffer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Consumes the request body in memory until it grows over the threshold, then spills it to a temp file. The channel
+ * is only asked for {@link #CHUNK_SIZE} bytes at a time, so the memory of a request stays bounded however large the
+ * body is.
+ *
+ * <p>The temp file is written on the given writer, the IO reactor thread only copies the data it reads into pooled
+ * chunks. The tasks of a consumer run one after another in order, while the tasks of different consumers may run on
+ * different threads of the writer. The reading is paused while a chunk or more waits to be written, and the body of a
+ * spilled request completes on the writer once all of it is on disk.
+ *
+ * <p>The completed body is closed when the consumer is released at the end of the exchange, which deletes its temp
+ * file.
+ */
+public class SpillingEntityConsumer implements AsyncEntityConsumer<HttpEntity> {
+
+    private static final String TAG = AndServer.genAndServerTag("SpillingEntityConsumer");
+
+    public static final int DEFAULT_THRESHOLD = 1024 * 1024;
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * The chunks which are handed to the writer, shared by all the consumers.
+     */
+    private static final BufferPool POOL = new BufferPool(CHUNK_SIZE, 64, false);
+
+    private final int mThreshold;
+    private final File mDirectory;
+    private final Executor mWriter;
+
+    /**
+     * The tasks waiting for the writer, they are run in order.
+     */
+    private final Queue<Runnable> mTasks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger mPendingTasks = new AtomicInteger();
+
+    private volatile FutureCallback<HttpEntity> mCallback;
+    private volatile HttpEntity mContent;
+    private volatile IOException mError;
+
+    /**
+     * The number of bytes which are handed to the writer but not written yet.
+     */
+    private final AtomicInteger mWriting = new AtomicInteger();
+    /**
+     * The channel waiting for capacity, it is given capacity once the writer catches up.
+     */
+    private final AtomicReference<CapacityChannel> mCapacityChannel = new AtomicReference<>();
+
+    // Used by the IO reactor thread.
+    private ContentType mContentType;
+    private ByteArrayBuffer mBuffer;
+    private boolean isSpilled;
+
+    // Used by the tasks of the writer, which never run at the same time.
+    private File mFile;
+    private FileChannel mChannel;
+    private boolean isReleased;
+
+    /**
+     * @param threshold the max number of bytes kept in memory.
+     * @param directory the directory of the temp files, or {@code null} for the default temp directory.
+     * @param writer the executor which writes the temp files.
+     */
+    public SpillingEntityConsumer(int threshold, @Nullable File directory, @NonNull Executor writer) {
+        this.mThreshold = threshold;
+        this.mDirectory = directory;
+        this.mWriter = writer;
+    }
+
+    @Override
+    public void streamStart(EntityDetails entityDetails, FutureCallback<HttpEntity> resultCallback)
+        throws HttpException, IOException {
+        this.mCallback = resultCallback;
+        try {
+            this.mContentType = entityDetails == null ? null : ContentType.parse(entityDetails.getContentType());
+        } catch (UnsupportedCharsetException e) {
+            throw new UnsupportedEncodingException(e.getMessage());
+        }
+        this.mBuffer = new ByteArrayBuffer(Math.min(CHUNK_SIZE, Math.max(mThreshold, 1)));
+    }
+
+    @Override
+    public void updateCapacity(CapacityChannel capacityChannel) throws IOException {
+        if (!isSpilled) {
+            capacityChannel.update(CHUNK_SIZE);
+            return;
+        }
+
+        // The writer gives the capacity if it catches up after the channel is set.
+        mCapacityChannel.set(capacityChannel);
+        if (mWriting.get() < CHUNK_SIZE || mError != null) {
+            grantCapacity();
+        }
+    }
+
+    @Override
+    public void consume(ByteBuffer src) throws IOException {
+        throwIfFailed();
+        if (!src.hasRemaining()) {
+            return;
+        }
+
+        if (!isSpilled && mBuffer.length() + src.remaining() <= mThreshold) {
+            mBuffer.append(src);
+            return;
+        }
+
+        if (!isSpilled) {
+            isSpilled = true;
+            write(ByteBuffer.wrap(mBuffer.array(), 0, mBuffer.length()));
+            mBuffer = null;
+        }
+        while (src.hasRemaining()) {
+            ByteBuffer chunk = POOL.acquire();
+            if (src.remaining() <= chunk.remaining()) {
+                chunk.put(src);
+            } else {
+                ByteBuffer slice = src.duplicate();
+                slice.limit(slice.position() + chunk.remaining());
+                chunk.put(slice);
+                src.position(slice.position());
+            }
+            chunk.flip();
+            write(chunk);
+        }
+    }
+
+    @Override
+    public void streamEnd(List<? extends Header> trailers) throws HttpException, IOException {
+        throwIfFailed();
+        if (!isSpilled) {
+            HttpEntity entity = new ByteArrayEntity(mBuffer.toByteArray(), mContentType);
+            mBuffer = null;
+            complete(entity);
+            return;
+        }
+
+        post(() -> {
+            if (isReleased || mError != null) {
+                return;
+            }
+            try {
+                mChannel.close();
+            } catch (IOException e) {
+                fail(e);
+                return;
+            }
+            mChannel = null;
+            File file = mFile;
+            mFile = null;
+            complete(new TempFileEntity(file, mContentType));
+        });
+    }
+
+    @Override
+    public void failed(Exception cause) {
+        FutureCallback<HttpEntity> callback = mCallback;
+        if (callback != null) {
+            callback.failed(cause);
+        }
+        releaseResources();
+    }
+
+    @Override
+    public HttpEntity getContent() {
+        return mContent;
+    }
+
+    @Override
+    public void releaseResources() {
+        mBuffer = null;
+        if (!isSpilled) {
+            // The body in memory holds nothing to close.
+            return;
+        }
+        // Run after the pending chunks, so the completed body is found if the exchange is released once it is done.
+        post(() -> {
+            if (isReleased) {
+                return;
+            }
+            isReleased = true;
+            deleteFile();
+            HttpEntity content = mContent;
+            if (content != null) {
+                try {
+                    content.close();
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed to close the request body.", e);
+                }
+            }
+        });
+    }
+
+    private void write(ByteBuffer chunk) {
+        int length = chunk.remaining();
+        mWriting.addAndGet(length);
+        post(() -> {
+            try {
+                if (!isReleased && mError == null) {
+                    if (mChannel == null) {
+                        mFile = File.createTempFile("andserver-body-", ".tmp", mDirectory);
+                        mChannel = new FileOutputStream(mFile).getChannel();
+                    }
+                    while (chunk.hasRemaining()) {
+                        mChannel.write(chunk);
+                    }
+                }
+            } catch (IOException e) {
+                fail(e);
+            } finally {
+                POOL.release(chunk);
+                if (mWriting.addAndGet(-length) < CHUNK_SIZE) {
+                    grantCapacity();
+                }
+            }
+        });
+    }
+
+    /**
+     * Queue the task for the writer, only one task of this consumer is run at a time.
+     */
+    private void post(Runnable task) {
+        mTasks.offer(task);
+        if (mPendingTasks.getAndIncrement() == 0) {
+            try {
+                mWriter.execute(this::runTasks);
+            } catch (RejectedExecutionException e) {
+                // The server is shutting down, the file must be deleted all the same.
+                runTasks();
+            }
+        }
+    }
+
+    private void runTasks() {
+        do {
+            Runnable task = mTasks.poll();
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Failed to write the request body.", e);
+            }
+        } while (mPendingTasks.decrementAndGet() > 0);
+    }
+
+    private void complete(HttpEntity entity) {
+        mContent = entity;
+        FutureCallback<HttpEntity> callback = mCallback;
+        if (callback != null) {
+            callback.completed(entity);
+        }
+    }
+
+    /**
+     * Fail the body on the writer, the IO reactor thread finds the error when it reads again.
+     */
+    private void fail(IOException e) {
+        mError = e;
+        deleteFile();
+        grantCapacity();
+        FutureCallback<HttpEntity> callback = mCallback;
+        if (callback != null) {
+            callback.failed(e);
+        }
+    }
+
+    private void deleteFile() {
+        if (mChannel != null) {
+            try {
+                mChannel.close();
+            } catch (IOException ignored) {
+            }
+            mChannel = null;
+        }
+        if (mFile != null) {
+            mFile.delete();
+            mFile = null;
+        }
+    }
+
+    private void grantCapacity() {
+        CapacityChannel capacityChannel = mCapacityChannel.getAndSet(null);
+        if (capacityChannel != null) {
+            try {
+                capacityChannel.update(CHUNK_SIZE);
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to resume reading the request body.", e);
+            }
+        }
+    }
+
+    private void throwIfFailed() throws IOException {
+        IOException error = mError;
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private static class TempFileEntity extends AbstractHttpEntity {
+
+        private final File mFile;
+
+        private TempFileEntity(File file, ContentType contentType) {
+            super(contentType, null);
+            this.mFile = file;
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public long getContentLength() {
+            return mFile.length();
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            return new FileInputStream(mFile);
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+            mFile.delete();
+        }
+    }
+}
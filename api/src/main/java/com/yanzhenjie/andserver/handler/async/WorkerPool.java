@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2022 ISNing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.andserver.handler.async;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The workers of a server run, created by {@link ExecutionMode#newWorkerPool()}. It also counts the requests which
+ * are waiting, executed and rejected.
+ */
+public class WorkerPool {
+
+    private final ExecutorService mService;
+
+    private final AtomicInteger mQueueDepth = new AtomicInteger();
+    private final AtomicInteger mMaxQueueDepth = new AtomicInteger();
+    private final AtomicLong mExecutedCount = new AtomicLong();
+    private final AtomicLong mRejectedCount = new AtomicLong();
+
+    WorkerPool(@Nullable ExecutorService service) {
+        this.mService = service;
+    }
+
+    /**
+     * Whether the tasks are run on the calling thread.
+     */
+    public boolean isInline() {
+        return mService == null;
+    }
+
+    /**
+     * Run the task on a worker.
+     *
+     * @param task the task.
+     *
+     * @return false if the task was rejected because the workers are busy or shut down.
+     */
+    public boolean execute(@NonNull Runnable task) {
+        if (mService == null) {
+            mExecutedCount.incrementAndGet();
+            task.run();
+            return true;
+        }
+
+        int depth = mQueueDepth.incrementAndGet();
+        int max = mMaxQueueDepth.get();
+        while (depth > max && !mMaxQueueDepth.compareAndSet(max, depth)) {
+            max = mMaxQueueDepth.get();
+        }
+
+        try {
+            mService.execute(() -> {
+                mQueueDepth.decrementAndGet();
+                mExecutedCount.incrementAndGet();
+                task.run();
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            mQueueDepth.decrementAndGet();
+            mRejectedCount.incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * Stop accepting tasks, the tasks which have been accepted are still run.
+     */
+    public void shutdown() {
+        if (mService != null) {
+            mService.shutdown();
+        }
+    }
+
+    /**
+     * Get the number of tasks waiting for a worker.
+     */
+    public int getQueueDepth() {
+        return mQueueDepth.get();
+    }
+
+    /**
+     * Get the largest number of tasks which have been waiting at the same time.
+     */
+    public int getMaxQueueDepth() {
+        return mMaxQueueDepth.get();
+    }
+
+    /**
+     * Get the number of tasks which have been started.
+     */
+    public long getExecutedCount() {
+        return mExecutedCount.get();
+    }
+
+    /**
+     * Get the number of tasks which have been rejected.
+     */
+    public long getRejectedCount() {
+        return mRejectedCount.get();
+    }
+}
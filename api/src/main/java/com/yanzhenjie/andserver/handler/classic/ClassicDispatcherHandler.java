@@ -18,6 +18,8 @@ package com.yanzhenjie.andserver.handler.classic;
 
 import android.content.Context;
 
+import androidx.annotation.NonNull;
+
 import com.yanzhenjie.andserver.AndServer;
 import com.yanzhenjie.andserver.handler.BasicDispatcherHandler;
 import com.yanzhenjie.andserver.http.HttpRequest;
@@ -26,7 +28,6 @@ import com.yanzhenjie.andserver.http.StandardContext;
 import com.yanzhenjie.andserver.http.StandardRequest;
 import com.yanzhenjie.andserver.http.StandardResponse;
 import com.yanzhenjie.andserver.http.session.SessionManager;
-import com.yanzhenjie.andserver.http.session.StandardSessionManager;
 
 import org.apache.hc.core5.http.ClassicHttpRequest;
 import org.apache.hc.core5.http.ClassicHttpResponse;
@@ -40,11 +41,12 @@ public class ClassicDispatcherHandler extends BasicDispatcherHandler implements
     public static final String SUB_TAG = "ClassicDispatcherHandler";
     public static final String TAG = AndServer.genAndServerTag(SUB_TAG);
 
-    private final SessionManager mSessionManager;
-
     public ClassicDispatcherHandler(Context context) {
         super(context);
-        this.mSessionManager = new StandardSessionManager(context);
+    }
+
+    public ClassicDispatcherHandler(Context context, @NonNull SessionManager sessionManager) {
+        super(context, sessionManager);
     }
 
     @Override
@@ -52,7 +54,7 @@ public class ClassicDispatcherHandler extends BasicDispatcherHandler implements
                        ClassicHttpResponse response,
                        org.apache.hc.core5.http.protocol.HttpContext context) {
         HttpRequest requestWrapped = new StandardRequest(request, new StandardContext(context),
-                this, mSessionManager);
+                this, getSessionManager());
         HttpResponse responseWrapped = new StandardResponse(response);
         handle(requestWrapped, responseWrapped);
     }
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2022 ISNing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.andserver.http;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A content coding of the {@code Accept-Encoding} header, e.g. {@code gzip;q=0.8}.
+ */
+public class AcceptEncoding {
+
+    private final String coding;
+    private final double quality;
+
+    protected AcceptEncoding(String coding, double quality) {
+        this.coding = coding;
+        this.quality = quality;
+    }
+
+    public String getCoding() {
+        return coding;
+    }
+
+    public double getQuality() {
+        return quality;
+    }
+
+    @NonNull
+    public static List<AcceptEncoding> parse(@Nullable String input) {
+        if (input == null || input.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<AcceptEncoding> list = new ArrayList<>();
+        for (String segment: input.split(",")) {
+            String[] values = segment.split(";");
+            String coding = values[0].trim();
+            if (coding.isEmpty()) {
+                continue;
+            }
+
+            double quality = 1;
+            for (int i = 1; i < values.length; i++) {
+                String parameter = values[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            list.add(new AcceptEncoding(coding, quality));
+        }
+        return list;
+    }
+
+    /**
+     * Whether the coding is acceptable, a coding which is not listed is accepted by {@code *}.
+     *
+     * @param encodings the parsed {@code Accept-Encoding} header.
+     * @param coding the content coding, e.g. {@code gzip}.
+     */
+    public static boolean accepts(@NonNull List<AcceptEncoding> encodings, @NonNull String coding) {
+        Double wildcard = null;
+        for (AcceptEncoding encoding: encodings) {
+            if (encoding.coding.equalsIgnoreCase(coding)) {
+                return encoding.quality > 0;
+            }
+            if ("*".equals(encoding.coding)) {
+                wildcard = encoding.quality;
+            }
+        }
+        return wildcard != null && wildcard > 0;
+    }
+}
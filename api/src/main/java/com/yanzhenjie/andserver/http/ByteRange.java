@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2022 ISNing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.andserver.http;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A satisfiable range of the {@code Range} header, e.g. {@code bytes=0-499}, resolved against the length of the
+ * representation.
+ */
+public class ByteRange {
+
+    /**
+     * The header asking for more ranges is ignored, the whole representation is cheaper to send than so many parts.
+     */
+    public static final int MAX_RANGES = 16;
+
+    private static final String UNIT = "bytes=";
+
+    private final long start;
+    private final long end;
+
+    protected ByteRange(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Get the position of the first byte.
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * Get the position of the last byte, inclusive.
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    public long getLength() {
+        return end - start + 1;
+    }
+
+    /**
+     * Get the value of the {@code Content-Range} header of the range.
+     *
+     * @param completeLength the length of the representation.
+     */
+    public String toContentRange(long completeLength) {
+        return "bytes " + start + "-" + end + "/" + completeLength;
+    }
+
+    /**
+     * Parse the {@code Range} header.
+     *
+     * @param input the value of the header.
+     * @param length the length of the representation.
+     *
+     * @return the satisfiable ranges, an empty list if none of them is satisfiable, or {@code null} if the header is
+     *     invalid and must be ignored.
+     */
+    @Nullable
+    public static List<ByteRange> parse(@Nullable String input, long length) {
+        if (input == null || !input.trim().startsWith(UNIT)) {
+            return null;
+        }
+
+        String[] segments = input.trim().substring(UNIT.length()).split(",");
+        if (segments.length > MAX_RANGES) {
+            return null;
+        }
+        List<ByteRange> list = new ArrayList<>();
+        long total = 0;
+        for (String segment: segments) {
+            String spec = segment.trim();
+            int index = spec.indexOf('-');
+            if (index < 0) {
+                return null;
+            }
+            long first;
+            long last;
+            try {
+                String firstValue = spec.substring(0, index).trim();
+                String lastValue = spec.substring(index + 1).trim();
+                if (firstValue.isEmpty()) {
+                    // The suffix range, the last N bytes.
+                    long suffix = Long.parseLong(lastValue);
+                    if (suffix < 0) {
+                        return null;
+                    }
+                    first = Math.max(0, length - suffix);
+                    last = suffix == 0 ? -1 : length - 1;
+                } else {
+                    first = Long.parseLong(firstValue);
+                    last = lastValue.isEmpty() ? length - 1 : Math.min(Long.parseLong(lastValue), length - 1);
+                    if (first < 0 || (!lastValue.isEmpty() && Long.parseLong(lastValue) < first)) {
+                        return null;
+                    }
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (first < length && first <= last) {
+                list.add(new ByteRange(first, last));
+                total += last - first + 1;
+            }
+        }
+        // Overlapping ranges would multiply the bytes which are sent.
+        return total > length ? null : list;
+    }
+}
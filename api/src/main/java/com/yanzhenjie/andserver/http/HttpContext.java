@@ -27,6 +27,14 @@ public interface HttpContext {
 
     String REQUEST_CREATED_SESSION = "http.request.Session";
 
+    String REQUEST_ROUTE_RESULT = "http.request.RouteResult";
+
+    String REQUEST_ROUTE_MATCH = "http.request.RouteMatch";
+
+    String REQUEST_RESOLVED_RESOURCE = "http.request.ResolvedResource";
+
+    String REQUEST_RANGE_APPLICABLE = "http.request.RangeApplicable";
+
     String HTTP_MESSAGE_CONVERTER = "http.message.converter";
 
     String ANDROID_CONTEXT = "android.context";
@@ -22,6 +22,7 @@ import com.yanzhenjie.andserver.http.cookie.Cookie;
 import com.yanzhenjie.andserver.http.session.Session;
 import com.yanzhenjie.andserver.util.MediaType;
 import com.yanzhenjie.andserver.util.MultiValueMap;
+import com.yanzhenjie.andserver.util.PathSegments;
 
 import java.util.Date;
 import java.util.List;
@@ -57,6 +58,12 @@ public interface HttpRequest extends HttpContext, HttpHeaders {
     @NonNull
     String getPath();
 
+    /**
+     * Get the segments of the path, the path is split at most once for each request.
+     */
+    @NonNull
+    PathSegments getPathSegments();
+
     /**
      * Returns an {@link List} of {@code String} objects containing the names of the query parameters contained in url
      * of this request,  or empty {@link List} if there are no query parameters.
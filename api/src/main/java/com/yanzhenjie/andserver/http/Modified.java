@@ -113,6 +113,33 @@ public class Modified implements HttpHeaders {
         return isNotModified;
     }
 
+    /**
+     * Whether the {@code Range} of the request can be served, according to its {@code If-Range}. The range is only
+     * served if the representation of the client is still current, otherwise the whole representation is sent.
+     *
+     * @param eTag the tag of the resource.
+     * @param lastModified the last-modified timestamp in milliseconds of the resource.
+     *
+     * @return true if the request has no {@code If-Range} or it matches the resource.
+     */
+    public boolean validateIfRange(@Nullable String eTag, long lastModified) {
+        Header header = mRequest.getHeader(IF_RANGE);
+        String ifRange = header == null ? null : header.getValue();
+        if (StringUtils.isEmpty(ifRange)) {
+            return true;
+        }
+
+        // See https://tools.ietf.org/html/rfc7233#section-3.2
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // The strong comparison, a weak tag never matches.
+            return !TextUtils.isEmpty(eTag) && !eTag.startsWith("W/") && !ifRange.startsWith("W/") &&
+                padETagIfNecessary(eTag).equals(ifRange);
+        }
+        long date = parseDateValue(ifRange);
+        return date != -1 && lastModified > 0 && date / 1000 == lastModified / 1000;
+    }
+
     private boolean validateIfNoneMatch(String eTag) {
         if (TextUtils.isEmpty(eTag)) {
             return false;
@@ -22,6 +22,7 @@ import com.yanzhenjie.andserver.http.cookie.Cookie;
 import com.yanzhenjie.andserver.http.session.Session;
 import com.yanzhenjie.andserver.util.MediaType;
 import com.yanzhenjie.andserver.util.MultiValueMap;
+import com.yanzhenjie.andserver.util.PathSegments;
 
 import java.util.List;
 import java.util.Locale;
@@ -64,6 +65,12 @@ public class RequestWrapper implements HttpRequest {
         return mRequest.getPath();
     }
 
+    @NonNull
+    @Override
+    public PathSegments getPathSegments() {
+        return mRequest.getPathSegments();
+    }
+
     @NonNull
     @Override
     public List<String> getQueryNames() {
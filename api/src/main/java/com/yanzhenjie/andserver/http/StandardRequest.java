@@ -33,6 +33,7 @@ import com.yanzhenjie.andserver.util.LinkedMultiValueMap;
 import com.yanzhenjie.andserver.util.MediaType;
 import com.yanzhenjie.andserver.util.MimeType;
 import com.yanzhenjie.andserver.util.MultiValueMap;
+import com.yanzhenjie.andserver.util.PathSegments;
 import com.yanzhenjie.andserver.util.UrlCoder;
 
 import org.apache.commons.io.Charsets;
@@ -71,6 +72,8 @@ public class StandardRequest implements HttpRequest {
     private Uri mUri;
     private boolean isParsedUri;
 
+    private PathSegments mPathSegments;
+
     private MultiValueMap<String, String> mQuery;
     private boolean isParsedQuery;
 
@@ -153,6 +156,16 @@ public class StandardRequest implements HttpRequest {
     public void setPath(String path) {
         parseUri();
         mUri = mUri.builder().setPath(path).build();
+        mPathSegments = null;
+    }
+
+    @NonNull
+    @Override
+    public PathSegments getPathSegments() {
+        if (mPathSegments == null) {
+            mPathSegments = new PathSegments(getPath());
+        }
+        return mPathSegments;
     }
 
     @NonNull
@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2022 ISNing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.andserver.http.session;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamConstants;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact binary format of the sessions. The strings, the primitives and the byte arrays are written as they are,
+ * only the other {@link Serializable} attributes fall back to the Java serialization.
+ *
+ * <pre>
+ * session   = magic(2) version(1) id created(8) accessed(8) interval(4) flags(1) count(4) attribute*
+ * attribute = name type(1) length(4) value(length)
+ * string    = length(4) utf-8(length)
+ * </pre>
+ *
+ * <p>Every attribute has the length of its value, so a reader skips the types which are added by the later versions
+ * of the same format. A reader fails on a newer version of the format, and it reads the files written by the
+ * {@link JavaSessionCodec} of the earlier versions.
+ */
+public class BinarySessionCodec implements SessionCodec {
+
+    public static final int MAGIC = 0x4153;
+    public static final int VERSION = 1;
+
+    private static final int FLAG_NEW = 1;
+    private static final int FLAG_VALID = 1 << 1;
+
+    private static final int TYPE_STRING = 1;
+    private static final int TYPE_INT = 2;
+    private static final int TYPE_LONG = 3;
+    private static final int TYPE_BOOLEAN = 4;
+    private static final int TYPE_DOUBLE = 5;
+    private static final int TYPE_FLOAT = 6;
+    private static final int TYPE_SHORT = 7;
+    private static final int TYPE_BYTE = 8;
+    private static final int TYPE_CHAR = 9;
+    private static final int TYPE_BYTES = 10;
+    private static final int TYPE_SERIALIZABLE = 11;
+
+    private final SessionCodec mLegacy = new JavaSessionCodec();
+
+    @Override
+    public void encode(@NonNull StandardSession session, @NonNull OutputStream stream) throws IOException {
+        // The attributes may be changed while the session is written, the count must match what is written.
+        List<Map.Entry<String, Object>> attributes = new ArrayList<>();
+        for (Map.Entry<String, Object> entry: session.getAttributes().entrySet()) {
+            if (entry.getValue() instanceof Serializable) {
+                attributes.add(entry);
+            }
+        }
+
+        DataOutputStream writer = new DataOutputStream(stream);
+        writer.writeShort(MAGIC);
+        writer.writeByte(VERSION);
+        writeString(writer, session.getId());
+        writer.writeLong(session.getCreatedTime());
+        writer.writeLong(session.getAccessedTime());
+        writer.writeInt(session.getMaxInactiveInterval());
+        int flags = (session.getNewFlag() ? FLAG_NEW : 0) | (session.getValidFlag() ? FLAG_VALID : 0);
+        writer.writeByte(flags);
+        writer.writeInt(attributes.size());
+        for (Map.Entry<String, Object> entry: attributes) {
+            writeString(writer, entry.getKey());
+            writeValue(writer, entry.getValue());
+        }
+        writer.flush();
+    }
+
+    @NonNull
+    @Override
+    public StandardSession decode(@NonNull InputStream stream) throws IOException, ClassNotFoundException {
+        if (!stream.markSupported()) {
+            stream = new BufferedInputStream(stream);
+        }
+        stream.mark(2);
+        DataInputStream reader = new DataInputStream(stream);
+        int magic = reader.readUnsignedShort();
+        if (magic == (ObjectStreamConstants.STREAM_MAGIC & 0xFFFF)) {
+            stream.reset();
+            return mLegacy.decode(stream);
+        }
+        if (magic != MAGIC) {
+            throw new IOException("The stream is not a session.");
+        }
+        int version = reader.readUnsignedByte();
+        if (version > VERSION) {
+            throw new IOException("Unsupported session format version: " + version + ".");
+        }
+
+        StandardSession session = new StandardSession();
+        session.setId(readString(reader));
+        session.setCreatedTime(reader.readLong());
+        session.setLastAccessedTime(reader.readLong());
+        session.setMaxInactiveInterval(reader.readInt());
+        int flags = reader.readUnsignedByte();
+        session.setNew((flags & FLAG_NEW) != 0);
+        session.setValid((flags & FLAG_VALID) != 0);
+
+        Map<String, Object> attributes = session.getAttributes();
+        int count = reader.readInt();
+        for (int i = 0; i < count; i++) {
+            String name = readString(reader);
+            Object value = readValue(reader);
+            if (value != null) {
+                attributes.put(name, value);
+            }
+        }
+        return session;
+    }
+
+    private static void writeString(DataOutputStream writer, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writer.writeInt(bytes.length);
+        writer.write(bytes);
+    }
+
+    private static String readString(DataInputStream reader) throws IOException {
+        return new String(readBytes(reader, reader.readInt()), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readBytes(DataInputStream reader, int length) throws IOException {
+        if (length < 0) {
+            throw new IOException("Invalid length: " + length + ".");
+        }
+        byte[] bytes = new byte[length];
+        reader.readFully(bytes);
+        return bytes;
+    }
+
+    private static void skipBytes(DataInputStream reader, int length) throws IOException {
+        if (length < 0) {
+            throw new IOException("Invalid length: " + length + ".");
+        }
+        while (length > 0) {
+            int skipped = reader.skipBytes(length);
+            if (skipped <= 0) {
+                // Throws EOFException if the value is truncated.
+                reader.readByte();
+                skipped = 1;
+            }
+            length -= skipped;
+        }
+    }
+
+    private static void writeValue(DataOutputStream writer, Object value) throws IOException {
+        if (value instanceof String) {
+            byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+            writer.writeByte(TYPE_STRING);
+            writer.writeInt(bytes.length);
+            writer.write(bytes);
+        } else if (value instanceof Integer) {
+            writer.writeByte(TYPE_INT);
+            writer.writeInt(4);
+            writer.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            writer.writeByte(TYPE_LONG);
+            writer.writeInt(8);
+            writer.writeLong((Long) value);
+        } else if (value instanceof Boolean) {
+            writer.writeByte(TYPE_BOOLEAN);
+            writer.writeInt(1);
+            writer.writeBoolean((Boolean) value);
+        } else if (value instanceof Double) {
+            writer.writeByte(TYPE_DOUBLE);
+            writer.writeInt(8);
+            writer.writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            writer.writeByte(TYPE_FLOAT);
+            writer.writeInt(4);
+            writer.writeFloat((Float) value);
+        } else if (value instanceof Short) {
+            writer.writeByte(TYPE_SHORT);
+            writer.writeInt(2);
+            writer.writeShort((Short) value);
+        } else if (value instanceof Byte) {
+            writer.writeByte(TYPE_BYTE);
+            writer.writeInt(1);
+            writer.writeByte((Byte) value);
+        } else if (value instanceof Character) {
+            writer.writeByte(TYPE_CHAR);
+            writer.writeInt(2);
+            writer.writeChar((Character) value);
+        } else if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            writer.writeByte(TYPE_BYTES);
+            writer.writeInt(bytes.length);
+            writer.write(bytes);
+        } else {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            ObjectOutputStream objectWriter = new ObjectOutputStream(buffer);
+            objectWriter.writeObject(value);
+            objectWriter.close();
+            writer.writeByte(TYPE_SERIALIZABLE);
+            writer.writeInt(buffer.size());
+            buffer.writeTo(writer);
+        }
+    }
+
+    /**
+     * Read a value, or {@code null} if the type is unknown.
+     */
+    private static Object readValue(DataInputStream reader) throws IOException, ClassNotFoundException {
+        int type = reader.readUnsignedByte();
+        int length = reader.readInt();
+        switch (type) {
+            case TYPE_STRING: {
+                return new String(readBytes(reader, length), StandardCharsets.UTF_8);
+            }
+            case TYPE_INT: {
+                return reader.readInt();
+            }
+            case TYPE_LONG: {
+                return reader.readLong();
+            }
+            case TYPE_BOOLEAN: {
+                return reader.readBoolean();
+            }
+            case TYPE_DOUBLE: {
+                return reader.readDouble();
+            }
+            case TYPE_FLOAT: {
+                return reader.readFloat();
+            }
+            case TYPE_SHORT: {
+                return reader.readShort();
+            }
+            case TYPE_BYTE: {
+                return reader.readByte();
+            }
+            case TYPE_CHAR: {
+                return reader.readChar();
+            }
+            case TYPE_BYTES: {
+                return readBytes(reader, length);
+            }
+            case TYPE_SERIALIZABLE: {
+                byte[] bytes = readBytes(reader, length);
+                ObjectInputStream objectReader = new ObjectInputStream(new ByteArrayInputStream(bytes));
+                return objectReader.readObject();
+            }
+            default: {
+                skipBytes(reader, length);
+                return null;
+            }
+        }
+    }
+}
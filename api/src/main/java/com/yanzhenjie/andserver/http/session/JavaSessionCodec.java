@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2022 ISNing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.andserver.http.session;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+/**
+ * The codec of the Java serialization, it is the format of the session files written by the earlier versions.
+ */
+public class JavaSessionCodec implements SessionCodec {
+
+    @Override
+    public void encode(@NonNull StandardSession session, @NonNull OutputStream stream) throws IOException {
+        ObjectOutputStream writer = new ObjectOutputStream(stream);
+        session.writeObject(writer);
+        writer.flush();
+    }
+
+    @NonNull
+    @Override
+    public StandardSession decode(@NonNull InputStream stream) throws IOException, ClassNotFoundException {
+        ObjectInputStream reader = new ObjectInputStream(stream);
+        StandardSession session = new StandardSession();
+        session.readObject(reader);
+        return session;
+    }
+}
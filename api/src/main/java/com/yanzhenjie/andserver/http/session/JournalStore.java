@@ -0,0 +1,540 @@
+/*
+ * Copyright (C) 2022 ISNing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.andserver.http.session;
+
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.text.TextUtils;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.yanzhenjie.andserver.AndServer;
+import com.yanzhenjie.andserver.util.Assert;
+import com.yanzhenjie.andserver.util.IOUtils;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * A {@link Store} which keeps all the sessions in two files of a directory instead of a file per session: a snapshot
+ * and an append-only journal of the changes after the snapshot. A change is appended to the journal, the files are
+ * synced to the disk in a batch, and a session is read at its offset which is indexed in memory.
+ *
+ * <p>The journal is compacted in the background when most of the bytes are replaced or removed sessions, the live
+ * sessions are written to a new snapshot and the journal starts again. The files are replayed when the store is
+ * opened, a record which is torn by a crash is dropped with the records after it.
+ *
+ * <pre>
+ * record = length(4) crc32(4) operation(1) id-length(4) id session
+ * </pre>
+ */
+public class JournalStore implements Store, Closeable {
+
+    private static final String TAG = AndServer.genAndServerTag("JournalStore");
+
+    public static final String SNAPSHOT_NAME = "sessions.snapshot";
+    public static final String JOURNAL_NAME = "sessions.journal";
+
+    /**
+     * The delay in milliseconds between the first append and the sync of the journal.
+     */
+    public static final long SYNC_DELAY = 1000;
+    /**
+     * The size of the files under which the journal is never compacted.
+     */
+    public static final long MIN_COMPACT_SIZE = 1024 * 1024;
+
+    private static final int OPERATION_PUT = 1;
+    private static final int OPERATION_REMOVE = 2;
+    private static final int HEADER_LENGTH = 8;
+
+    private final File mDirectory;
+    private final SessionCodec mCodec;
+
+    private final ReadWriteLock mLock = new ReentrantReadWriteLock();
+    private final Map<String, Location> mIndex = new HashMap<>();
+    private FileChannel mSnapshot;
+    private FileChannel mJournal;
+    private long mSnapshotSize;
+    private long mJournalSize;
+    private long mLiveBytes;
+
+    private final AtomicBoolean isScheduled = new AtomicBoolean();
+    private boolean isDirty;
+    private volatile boolean isClosed;
+
+    private final Runnable mSyncTask = new Runnable() {
+        @Override
+        public void run() {
+            isScheduled.set(false);
+            try {
+                sync();
+                if (isCompactable()) {
+                    compact();
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to sync the session journal.", e);
+            }
+        }
+    };
+
+    public JournalStore(@NonNull File directory) throws IOException {
+        this(directory, SessionCodec.DEFAULT);
+    }
+
+    /**
+     * Open the store, the sessions of the files are indexed.
+     *
+     * @param directory the directory of the files.
+     * @param codec the format of the sessions.
+     *
+     * @throws IOException if the files cannot be opened or read.
+     */
+    public JournalStore(@NonNull File directory, @NonNull SessionCodec codec) throws IOException {
+        Assert.notNull(directory, "The directory cannot be null.");
+        Assert.notNull(codec, "The codec cannot be null.");
+        this.mDirectory = directory;
+        this.mCodec = codec;
+
+        if (!IOUtils.createFolder(directory)) {
+            throw new IOException("Failed to create the directory " + directory + ".");
+        }
+        this.mSnapshot = open(new File(directory, SNAPSHOT_NAME));
+        this.mJournal = open(new File(directory, JOURNAL_NAME));
+        this.mSnapshotSize = replay(new File(directory, SNAPSHOT_NAME), mSnapshot.size(), true);
+        this.mJournalSize = replay(new File(directory, JOURNAL_NAME), mJournal.size(), false);
+        if (mJournalSize < mJournal.size()) {
+            Log.w(TAG, "Dropped the torn records at the end of the session journal.");
+            mJournal.truncate(mJournalSize);
+            mJournal.force(false);
+        }
+    }
+
+    @Override
+    public boolean replace(@NonNull StandardSession session) throws IOException {
+        Assert.notNull(session, "The session can not be null.");
+
+        String id = session.getId();
+        if (TextUtils.isEmpty(id)) {
+            throw new IllegalStateException("The session id can not be empty or null.");
+        }
+
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        mCodec.encode(session, content);
+        append(OPERATION_PUT, id, content, null);
+        return true;
+    }
+
+    @Nullable
+    @Override
+    public StandardSession getSession(@NonNull String id) throws IOException, ClassNotFoundException {
+        if (TextUtils.isEmpty(id)) {
+            throw new IllegalArgumentException("The id can not be empty or null.");
+        }
+
+        if (isClosed) {
+            mLock.writeLock().lock();
+            try {
+                reopen();
+            } finally {
+                mLock.writeLock().unlock();
+            }
+        }
+
+        byte[] content;
+        Location location;
+        mLock.readLock().lock();
+        try {
+            location = mIndex.get(id);
+            if (location == null) {
+                return null;
+            }
+            content = new byte[location.mLength];
+            FileChannel channel = location.isSnapshot ? mSnapshot : mJournal;
+            readFully(channel, ByteBuffer.wrap(content), location.mOffset);
+        } finally {
+            mLock.readLock().unlock();
+        }
+
+        try {
+            return mCodec.decode(new ByteArrayInputStream(content));
+        } catch (IOException e) {
+            // The broken record is removed like the broken file of a StandardStore, so it is not read again.
+            try {
+                append(OPERATION_REMOVE, id, null, location);
+            } catch (IOException e1) {
+                Log.w(TAG, "Failed to remove the session " + id + ".", e1);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean remove(@NonNull StandardSession session) {
+        String id = session.getId();
+        if (TextUtils.isEmpty(id)) {
+            throw new IllegalStateException("The session id can not be empty or null.");
+        }
+
+        try {
+            return append(OPERATION_REMOVE, id, null, null);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to remove the session " + id + ".", e);
+            return false;
+        }
+    }
+
+    @NonNull
+    @Override
+    public String[] getIds() {
+        mLock.readLock().lock();
+        try {
+            return mIndex.keySet().toArray(new String[0]);
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Sync the appended records to the disk, it is called by the background writer after {@link #SYNC_DELAY}.
+     *
+     * @throws IOException if the journal cannot be synced.
+     */
+    public void sync() throws IOException {
+        mLock.writeLock().lock();
+        try {
+            if (isDirty) {
+                mJournal.force(false);
+                isDirty = false;
+            }
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Write the live sessions to a new snapshot and empty the journal. It blocks the other calls until it is done.
+     *
+     * @throws IOException if the files cannot be written.
+     */
+    public void compact() throws IOException {
+        mLock.writeLock().lock();
+        try {
+            reopen();
+            File temp = new File(mDirectory, SNAPSHOT_NAME + ".tmp");
+            Map<String, Location> index = new HashMap<>();
+            long size = 0;
+            FileChannel snapshot = open(temp);
+            try {
+                snapshot.truncate(0);
+                for (Map.Entry<String, Location> entry: mIndex.entrySet()) {
+                    Location location = entry.getValue();
+                    byte[] content = new byte[location.mLength];
+                    FileChannel channel = location.isSnapshot ? mSnapshot : mJournal;
+                    readFully(channel, ByteBuffer.wrap(content), location.mOffset);
+
+                    ByteBuffer record = newRecord(OPERATION_PUT, entry.getKey(), content);
+                    int recordLength = record.remaining();
+                    writeFully(snapshot, record, size);
+                    index.put(entry.getKey(), new Location(true, size + recordLength - content.length,
+                        content.length));
+                    size += recordLength;
+                }
+                snapshot.force(true);
+            } catch (IOException e) {
+                IOUtils.closeQuietly(snapshot);
+                IOUtils.delFileOrFolder(temp);
+                throw e;
+            }
+
+            // The old journal is replayed over the new snapshot if the journal is not emptied before a crash, the
+            // result is the same.
+            if (!temp.renameTo(new File(mDirectory, SNAPSHOT_NAME))) {
+                IOUtils.closeQuietly(snapshot);
+                IOUtils.delFileOrFolder(temp);
+                throw new IOException("Failed to replace the session snapshot.");
+            }
+            // The journal is emptied only after the rename is durable, or a crash could bring back the old snapshot
+            // without the journal.
+            try {
+                syncDirectory(mDirectory);
+            } catch (IOException e) {
+                IOUtils.closeQuietly(snapshot);
+                throw e;
+            }
+            IOUtils.closeQuietly(mSnapshot);
+            mSnapshot = snapshot;
+            mSnapshotSize = size;
+            mJournal.truncate(0);
+            mJournal.force(false);
+            mJournalSize = 0;
+            isDirty = false;
+            mIndex.clear();
+            mIndex.putAll(index);
+            mLiveBytes = size;
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Sync and close the files. They are opened again by the next call, so the store can be closed when the server
+     * stops and used again when it starts.
+     */
+    @Override
+    public void close() throws IOException {
+        mLock.writeLock().lock();
+        try {
+            if (isClosed) {
+                return;
+            }
+            if (isDirty) {
+                mJournal.force(false);
+                isDirty = false;
+            }
+            isClosed = true;
+            mSnapshot.close();
+            mJournal.close();
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Open the files again if the store has been closed, the caller must hold the write lock.
+     */
+    private void reopen() throws IOException {
+        if (isClosed) {
+            mSnapshot = open(new File(mDirectory, SNAPSHOT_NAME));
+            mJournal = open(new File(mDirectory, JOURNAL_NAME));
+            isClosed = false;
+        }
+    }
+
+    /**
+     * Append a record and index it.
+     *
+     * @param expected the location the removed session must still be at, or {@code null} to remove it anyway.
+     *
+     * @return false if there is nothing to remove.
+     */
+    private boolean append(int operation, String id, @Nullable ByteArrayOutputStream content,
+                           @Nullable Location expected) throws IOException {
+        byte[] bytes = content == null ? new byte[0] : content.toByteArray();
+        ByteBuffer record = newRecord(operation, id, bytes);
+        int recordLength = record.remaining();
+
+        mLock.writeLock().lock();
+        try {
+            reopen();
+            Location old;
+            if (operation == OPERATION_PUT) {
+                writeFully(mJournal, record, mJournalSize);
+                long offset = mJournalSize + recordLength - bytes.length;
+                old = mIndex.put(id, new Location(false, offset, bytes.length));
+                mLiveBytes += recordLength;
+            } else {
+                if (expected != null && mIndex.get(id) != expected) {
+                    return false;
+                }
+                old = mIndex.remove(id);
+                if (old == null) {
+                    return false;
+                }
+                writeFully(mJournal, record, mJournalSize);
+            }
+            if (old != null) {
+                mLiveBytes -= old.getRecordLength(id);
+            }
+            mJournalSize += recordLength;
+            isDirty = true;
+        } finally {
+            mLock.writeLock().unlock();
+        }
+
+        if (isScheduled.compareAndSet(false, true)) {
+            TieredStore.WRITER.schedule(mSyncTask, SYNC_DELAY, TimeUnit.MILLISECONDS);
+        }
+        return true;
+    }
+
+    private boolean isCompactable() {
+        mLock.readLock().lock();
+        try {
+            long size = mSnapshotSize + mJournalSize;
+            return size >= MIN_COMPACT_SIZE && mLiveBytes < size / 2;
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Index the records of the file.
+     *
+     * @return the length of the valid records from the start of the file.
+     */
+    private long replay(File file, long size, boolean snapshot) throws IOException {
+        DataInputStream reader = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        long position = 0;
+        try {
+            CRC32 crc = new CRC32();
+            while (true) {
+                int length;
+                try {
+                    length = reader.readInt();
+                } catch (EOFException e) {
+                    return position;
+                }
+                int checksum = reader.readInt();
+                if (length < 5 || position + HEADER_LENGTH + length > size) {
+                    return position;
+                }
+                byte[] body = new byte[length];
+                reader.readFully(body);
+                crc.reset();
+                crc.update(body, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    return position;
+                }
+
+                ByteBuffer buffer = ByteBuffer.wrap(body);
+                int operation = buffer.get();
+                int idLength = buffer.getInt();
+                if (idLength < 0 || idLength > buffer.remaining()) {
+                    return position;
+                }
+                String id = new String(body, buffer.position(), idLength, StandardCharsets.UTF_8);
+                int contentOffset = buffer.position() + idLength;
+                int recordLength = HEADER_LENGTH + length;
+                Location old;
+                if (operation == OPERATION_PUT) {
+                    old = mIndex.put(id, new Location(snapshot, position + HEADER_LENGTH + contentOffset,
+                        length - contentOffset));
+                    mLiveBytes += recordLength;
+                } else {
+                    old = mIndex.remove(id);
+                }
+                if (old != null) {
+                    mLiveBytes -= old.getRecordLength(id);
+                }
+                position += recordLength;
+            }
+        } catch (EOFException e) {
+            return position;
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+    }
+
+    private static ByteBuffer newRecord(int operation, String id, byte[] content) throws IOException {
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream body = new ByteArrayOutputStream(5 + idBytes.length + content.length);
+        DataOutputStream writer = new DataOutputStream(body);
+        writer.writeByte(operation);
+        writer.writeInt(idBytes.length);
+        writer.write(idBytes);
+        writer.write(content);
+
+        byte[] bytes = body.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_LENGTH + bytes.length);
+        record.putInt(bytes.length);
+        record.putInt((int) crc.getValue());
+        record.put(bytes);
+        record.flip();
+        return record;
+    }
+
+    /**
+     * Sync the entries of the directory to the disk, e.g. a renamed file.
+     */
+    private static void syncDirectory(File directory) throws IOException {
+        try {
+            FileDescriptor fd = Os.open(directory.getPath(), OsConstants.O_RDONLY, 0);
+            try {
+                Os.fsync(fd);
+            } finally {
+                Os.close(fd);
+            }
+        } catch (ErrnoException e) {
+            throw new IOException("Failed to sync the directory " + directory + ".", e);
+        }
+    }
+
+    private static FileChannel open(File file) throws IOException {
+        return new RandomAccessFile(file, "rw").getChannel();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int count = channel.read(buffer, position);
+            if (count < 0) {
+                throw new EOFException("The session record is truncated.");
+            }
+            position += count;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static class Location {
+
+        private final boolean isSnapshot;
+        private final long mOffset;
+        private final int mLength;
+
+        private Location(boolean snapshot, long offset, int length) {
+            this.isSnapshot = snapshot;
+            this.mOffset = offset;
+            this.mLength = length;
+        }
+
+        /**
+         * Get the length of the whole record of the session.
+         */
+        private int getRecordLength(String id) {
+            return HEADER_LENGTH + 5 + id.getBytes(StandardCharsets.UTF_8).length + mLength;
+        }
+    }
+}
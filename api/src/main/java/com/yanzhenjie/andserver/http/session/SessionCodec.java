@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2022 ISNing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.andserver.http.session;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Converts the sessions to the bytes kept by a {@link Store} and back.
+ */
+public interface SessionCodec {
+
+    /**
+     * The default codec, the compact binary format of {@link BinarySessionCodec}.
+     */
+    SessionCodec DEFAULT = new BinarySessionCodec();
+
+    /**
+     * Write the session to the stream.
+     *
+     * @param session the session.
+     * @param stream the target stream, it is not closed.
+     *
+     * @throws IOException if an output error occurs while processing this request.
+     */
+    void encode(@NonNull StandardSession session, @NonNull OutputStream stream) throws IOException;
+
+    /**
+     * Read a session from the stream.
+     *
+     * @param stream the source stream, it is not closed.
+     *
+     * @return the session.
+     *
+     * @throws IOException if the input error occurs or the bytes are not a session of this codec.
+     */
+    @NonNull
+    StandardSession decode(@NonNull InputStream stream) throws IOException, ClassNotFoundException;
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2022 ISNing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.andserver.http.session;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the sessions kept by a {@link TieredStore}.
+ */
+public class SessionStats {
+
+    private final Map<String, ?> mSessions;
+
+    private final AtomicLong mSweepCount = new AtomicLong();
+    private final AtomicLong mExpiredCount = new AtomicLong();
+    private final AtomicLong mEvictionCount = new AtomicLong();
+
+    SessionStats(Map<String, ?> sessions) {
+        this.mSessions = sessions;
+    }
+
+    void recordSweep(int expired) {
+        mSweepCount.incrementAndGet();
+        mExpiredCount.addAndGet(expired);
+    }
+
+    void recordEviction(int evicted) {
+        mEvictionCount.addAndGet(evicted);
+    }
+
+    /**
+     * Get the number of the sessions in memory.
+     */
+    public int getLiveCount() {
+        return mSessions.size();
+    }
+
+    /**
+     * Get the number of the sweeps done.
+     */
+    public long getSweepCount() {
+        return mSweepCount.get();
+    }
+
+    /**
+     * Get the number of the expired sessions removed by the sweeps, in memory or on disk.
+     */
+    public long getExpiredCount() {
+        return mExpiredCount.get();
+    }
+
+    /**
+     * Get the number of the least recently accessed sessions removed because there were too many live sessions.
+     */
+    public long getEvictionCount() {
+        return mEvictionCount.get();
+    }
+}
@@ -21,52 +21,45 @@ import androidx.annotation.NonNull;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 
+/**
+ * Generates the session IDs from the random bytes of a {@link SecureRandom}. Every thread has its own random number
+ * generator, so the threads never wait for each other, and a generator is seeded once for the thread instead of once
+ * for every session manager.
+ */
 public class StandardIdGenerator implements IdGenerator {
 
     private static final int ID_LENGTH = 30;
+    private static final char[] DIGITS = "0123456789ABCDEF".toCharArray();
 
-    private final SecureRandom mRandom;
+    private static final ThreadLocal<SecureRandom> RANDOM = new ThreadLocal<SecureRandom>() {
+        @Override
+        protected SecureRandom initialValue() {
+            return createSecureRandom();
+        }
+    };
 
     public StandardIdGenerator() {
-        this.mRandom = createSecureRandom();
     }
 
     @NonNull
     @Override
     public String generateId() {
-        byte[] random = new byte[16];
+        byte[] random = new byte[ID_LENGTH];
+        RANDOM.get().nextBytes(random);
 
         // Render the result as a String of hexadecimal digits.
-        // Start with enough space for sessionIdLength and medium route size.
-        StringBuilder buffer = new StringBuilder(2 * ID_LENGTH + 20);
-
-        int resultLenBytes = 0;
-
-        while (resultLenBytes < ID_LENGTH) {
-            mRandom.nextBytes(random);
-            for (int j = 0; j < random.length && resultLenBytes < ID_LENGTH; j++) {
-                byte b1 = (byte) ((random[j] & 0xf0) >> 4);
-                byte b2 = (byte) (random[j] & 0x0f);
-                if (b1 < 10) {
-                    buffer.append((char) ('0' + b1));
-                } else {
-                    buffer.append((char) ('A' + (b1 - 10)));
-                }
-                if (b2 < 10) {
-                    buffer.append((char) ('0' + b2));
-                } else {
-                    buffer.append((char) ('A' + (b2 - 10)));
-                }
-                resultLenBytes++;
-            }
+        char[] buffer = new char[2 * ID_LENGTH];
+        for (int i = 0; i < ID_LENGTH; i++) {
+            buffer[2 * i] = DIGITS[(random[i] & 0xf0) >> 4];
+            buffer[2 * i + 1] = DIGITS[random[i] & 0x0f];
         }
-        return buffer.toString();
+        return new String(buffer);
     }
 
     /**
      * Create a new random number generator instance we should use for generating session identifiers.
      */
-    private SecureRandom createSecureRandom() {
+    private static SecureRandom createSecureRandom() {
         SecureRandom result;
         try {
             result = SecureRandom.getInstance("SHA1PRNG");
@@ -78,4 +71,4 @@ public class StandardIdGenerator implements IdGenerator {
         result.nextInt();
         return result;
     }
-}
\ No newline at end of file
+}
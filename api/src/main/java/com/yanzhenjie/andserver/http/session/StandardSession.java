@@ -28,6 +28,7 @@ import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -37,8 +38,6 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class StandardSession implements Session {
 
-    private static final String[] EMPTY_ARRAY = new String[0];
-
     private String id;
     private long createdTime;
     private long lastAccessedTime;
@@ -47,6 +46,9 @@ public class StandardSession implements Session {
     private boolean isNew;
     private boolean isValid;
 
+    private volatile boolean isChanged;
+    private volatile long mWrittenAccessedTime;
+
     public StandardSession() {
     }
 
@@ -83,9 +85,17 @@ public class StandardSession implements Session {
         return lastAccessedTime;
     }
 
+    /**
+     * Returns the last accessed time without validating the session, it is used to order the sessions for eviction.
+     */
+    long getAccessedTime() {
+        return lastAccessedTime;
+    }
+
     @Override
     public void setMaxInactiveInterval(int interval) {
         this.maxInactiveInterval = interval;
+        this.isChanged = true;
     }
 
     @Override
@@ -121,6 +131,7 @@ public class StandardSession implements Session {
             return;
         }
         mAttributes.put(name, value);
+        isChanged = true;
     }
 
     @Override
@@ -130,7 +141,9 @@ public class StandardSession implements Session {
         if (name == null) {
             return;
         }
-        mAttributes.remove(name);
+        if (mAttributes.remove(name) != null) {
+            isChanged = true;
+        }
     }
 
     @Override
@@ -138,6 +151,59 @@ public class StandardSession implements Session {
         validate();
 
         this.isValid = false;
+        this.isChanged = true;
+    }
+
+    /**
+     * Returns whether the session is new without validating the session, it is used by the {@link SessionCodec}.
+     */
+    boolean getNewFlag() {
+        return isNew;
+    }
+
+    /**
+     * Returns whether the session is valid without checking the expiry, it is used by the {@link SessionCodec}.
+     */
+    boolean getValidFlag() {
+        return isValid;
+    }
+
+    /**
+     * Returns the attributes of the session, it is used by the {@link SessionCodec}.
+     */
+    @NonNull
+    Map<String, Object> getAttributes() {
+        return mAttributes;
+    }
+
+    /**
+     * Returns whether the session is changed since it was written, other than its last accessed time.
+     */
+    boolean isChanged() {
+        return isChanged;
+    }
+
+    /**
+     * Returns the last accessed time when the session was written.
+     */
+    long getWrittenAccessedTime() {
+        return mWrittenAccessedTime;
+    }
+
+    /**
+     * Mark the session as written, it is called by the {@link TieredStore} before the session is encoded, so a change
+     * during the encoding is written again.
+     */
+    void setWritten() {
+        this.isChanged = false;
+        this.mWrittenAccessedTime = lastAccessedTime;
+    }
+
+    /**
+     * Mark the session as changed, e.g. it failed to be written.
+     */
+    void setChanged() {
+        this.isChanged = true;
     }
 
     public void setNew(boolean aNew) {
@@ -192,15 +258,18 @@ public class StandardSession implements Session {
         stream.writeInt(maxInactiveInterval);
         stream.writeBoolean(isNew);
         stream.writeBoolean(isValid);
-        stream.writeInt(mAttributes.size());
-        String[] keys = mAttributes.keySet().toArray(EMPTY_ARRAY);
-        for (String key: keys) {
-            Object value = mAttributes.get(key);
-            if (value instanceof Serializable) {
-                stream.writeObject(key);
-                stream.writeObject(value);
+        // Only the serializable attributes are written, the count must match them.
+        Map<String, Object> attributes = new HashMap<>();
+        for (Map.Entry<String, Object> entry: mAttributes.entrySet()) {
+            if (entry.getValue() instanceof Serializable) {
+                attributes.put(entry.getKey(), entry.getValue());
             }
         }
+        stream.writeInt(attributes.size());
+        for (Map.Entry<String, Object> entry: attributes.entrySet()) {
+            stream.writeObject(entry.getKey());
+            stream.writeObject(entry.getValue());
+        }
     }
 
     /**
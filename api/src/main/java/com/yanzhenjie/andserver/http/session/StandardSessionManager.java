@@ -20,22 +20,102 @@ import android.content.Context;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 
 /**
  * Created by Zhenjie Yan on 2018/7/26.
  */
-public class StandardSessionManager implements SessionManager {
+public class StandardSessionManager implements SessionManager, Closeable {
 
     private final IdGenerator mIdGenerator;
-    private final Store mStore;
+    private final TieredStore mStore;
 
     public StandardSessionManager(Context context) {
+        this(context, TieredStore.DEFAULT_MAX_SESSIONS);
+    }
+
+    /**
+     * Create a session manager.
+     *
+     * @param context the context.
+     * @param maxSessions the max number of the live sessions, the least recently accessed sessions are removed when
+     *     there are more.
+     */
+    public StandardSessionManager(Context context, int maxSessions) {
+        this(context, maxSessions, SessionCodec.DEFAULT);
+    }
+
+    /**
+     * Create a session manager.
+     *
+     * @param context the context.
+     * @param codec the format of the session files, e.g. {@link BinarySessionCodec} or {@link JavaSessionCodec}.
+     */
+    public StandardSessionManager(Context context, @NonNull SessionCodec codec) {
+        this(context, TieredStore.DEFAULT_MAX_SESSIONS, codec);
+    }
+
+    /**
+     * Create a session manager.
+     *
+     * @param context the context.
+     * @param maxSessions the max number of the live sessions, the least recently accessed sessions are removed when
+     *     there are more.
+     * @param codec the format of the session files, e.g. {@link BinarySessionCodec} or {@link JavaSessionCodec}.
+     */
+    public StandardSessionManager(Context context, int maxSessions, @NonNull SessionCodec codec) {
+        this(context, maxSessions, new StandardStore(new File(context.getCacheDir(), "_andserver_session_"), codec));
+    }
+
+    /**
+     * Create a session manager.
+     *
+     * @param context the context.
+     * @param store the store which persists the sessions, e.g. a {@link JournalStore}.
+     */
+    public StandardSessionManager(Context context, @NonNull Store store) {
+        this(context, TieredStore.DEFAULT_MAX_SESSIONS, store);
+    }
+
+    /**
+     * Create a session manager, the live sessions are kept in memory in front of the store.
+     *
+     * @param context the context.
+     * @param maxSessions the max number of the live sessions, the least recently accessed sessions are removed when
+     *     there are more.
+     * @param store the store which persists the sessions, e.g. a {@link JournalStore}.
+     */
+    public StandardSessionManager(Context context, int maxSessions, @NonNull Store store) {
         this.mIdGenerator = new StandardIdGenerator();
+        this.mStore = new TieredStore(store, maxSessions);
+    }
+
+    /**
+     * Get the counters of the sessions.
+     */
+    @NonNull
+    public SessionStats getStats() {
+        return mStore.getStats();
+    }
 
-        File sessionDir = new File(context.getCacheDir(), "_andserver_session_");
-        this.mStore = new StandardStore(sessionDir);
+    /**
+     * Write the changed sessions to the store now instead of after the flush delay, it blocks until they are written.
+     */
+    public void flush() {
+        mStore.flush();
+    }
+
+    /**
+     * Flush the changed sessions and close the store, it is called when the server stops. The sessions can still be
+     * used after it is closed, e.g. when the server starts again.
+     *
+     * @throws IOException if the store cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        mStore.close();
     }
 
     @Override
@@ -50,8 +130,7 @@ public class StandardSessionManager implements SessionManager {
     @Override
     public void changeSessionId(@NonNull Session session) {
         if (session instanceof StandardSession) {
-            StandardSession standardSession = (StandardSession) session;
-            standardSession.setId(mIdGenerator.generateId());
+            mStore.changeId((StandardSession) session, mIdGenerator.generateId());
         }
     }
 
@@ -69,6 +148,8 @@ public class StandardSessionManager implements SessionManager {
         StandardSession session = mStore.getSession(id);
         if (session != null) {
             session.setLastAccessedTime(System.currentTimeMillis());
+            // Keep the access time for the next start, it is written behind with the other changes.
+            mStore.touch(session);
         }
         return session;
     }
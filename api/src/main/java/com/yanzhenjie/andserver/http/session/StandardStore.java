@@ -23,12 +23,14 @@ import androidx.annotation.Nullable;
 import com.yanzhenjie.andserver.util.Assert;
 import com.yanzhenjie.andserver.util.IOUtils;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 /**
  * Created by Zhenjie Yan on 2018/7/26.
@@ -36,9 +38,16 @@ import java.io.ObjectOutputStream;
 public class StandardStore implements Store {
 
     private final File mDirectory;
+    private final SessionCodec mCodec;
 
     public StandardStore(File directory) {
+        this(directory, SessionCodec.DEFAULT);
+    }
+
+    public StandardStore(File directory, @NonNull SessionCodec codec) {
+        Assert.notNull(codec, "The codec cannot be null.");
         this.mDirectory = directory;
+        this.mCodec = codec;
     }
 
     @Override
@@ -50,7 +59,7 @@ public class StandardStore implements Store {
             throw new IllegalStateException("The session id can not be empty or null.");
         }
 
-        ObjectOutputStream writer = null;
+        OutputStream writer = null;
         try {
             if (!IOUtils.createFolder(mDirectory)) {
                 return false;
@@ -61,8 +70,9 @@ public class StandardStore implements Store {
                 return false;
             }
 
-            writer = new ObjectOutputStream(new FileOutputStream(file));
-            session.writeObject(writer);
+            writer = new BufferedOutputStream(new FileOutputStream(file));
+            mCodec.encode(session, writer);
+            writer.flush();
             return true;
         } catch (IOException e) {
             IOUtils.delFileOrFolder(new File(mDirectory, id));
@@ -79,17 +89,15 @@ public class StandardStore implements Store {
             throw new IllegalArgumentException("The id can not be empty or null.");
         }
 
-        ObjectInputStream reader = null;
+        InputStream reader = null;
         try {
             File file = new File(mDirectory, id);
             if (!file.exists() || file.isDirectory()) {
                 return null;
             }
 
-            reader = new ObjectInputStream(new FileInputStream(file));
-            StandardSession session = new StandardSession();
-            session.readObject(reader);
-            return session;
+            reader = new BufferedInputStream(new FileInputStream(file));
+            return mCodec.decode(reader);
         } catch (IOException e) {
             IOUtils.delFileOrFolder(new File(mDirectory, id));
             throw e;
@@ -106,4 +114,11 @@ public class StandardStore implements Store {
         }
         return IOUtils.delFileOrFolder(new File(mDirectory, session.getId()));
     }
+
+    @NonNull
+    @Override
+    public String[] getIds() {
+        String[] ids = mDirectory.list();
+        return ids == null ? new String[0] : ids;
+    }
 }
\ No newline at end of file
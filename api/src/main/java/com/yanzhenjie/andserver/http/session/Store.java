@@ -23,7 +23,7 @@ import java.io.IOException;
 /**
  * Created by Zhenjie Yan on 2018/7/26.
  */
-interface Store {
+public interface Store {
 
     /**
      * Increase the session to the persistent store.
@@ -56,4 +56,12 @@ interface Store {
      * @return true if successful removal, otherwise is false.
      */
     boolean remove(@NonNull StandardSession session);
+
+    /**
+     * Get the IDs of all the sessions in the persistent store.
+     *
+     * @return the session IDs.
+     */
+    @NonNull
+    String[] getIds();
 }
\ No newline at end of file
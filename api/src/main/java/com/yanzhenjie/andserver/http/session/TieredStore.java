@@ -0,0 +1,527 @@
+/*
+ * Copyright (C) 2022 ISNing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.andserver.http.session;
+
+import android.text.TextUtils;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.yanzhenjie.andserver.AndServer;
+import com.yanzhenjie.andserver.util.Assert;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A {@link Store} which keeps the live sessions in memory in front of a persistent store. The memory is the source of
+ * truth, a session is read from the persistent store only if it is not in memory, e.g. after the server restarted.
+ *
+ * <p>The changed sessions are written behind: they are collected and flushed to the persistent store in a batch by a
+ * background writer, a session changed several times before the flush is written once. An access which changes
+ * nothing but the last accessed time is written at most once per {@link #ACCESS_WRITE_INTERVAL}, and the changes
+ * which are not written by then, e.g. an attribute changed in place, are written by that write or by the next sweep.
+ *
+ * <p>The expired sessions are swept periodically from the memory and the persistent store. The sessions which are
+ * only in the persistent store, e.g. the ones of the previous start, are read once by the first sweep and indexed by
+ * their expiry time, so the later sweeps do not read them again. The number of the sessions is capped, in memory
+ * and in the persistent store, the least recently accessed sessions are removed when there are more.
+ */
+public class TieredStore implements Store, Closeable {
+
+    private static final String TAG = AndServer.genAndServerTag("TieredStore");
+
+    /**
+     * The delay in milliseconds between the first change and the flush of the changed sessions.
+     */
+    public static final long FLUSH_DELAY = 1000;
+    /**
+     * The interval in milliseconds between two sweeps of the expired sessions.
+     */
+    public static final long SWEEP_INTERVAL = 60 * 1000;
+    /**
+     * The min interval in milliseconds between two writes of a session which only changes its last accessed time.
+     */
+    public static final long ACCESS_WRITE_INTERVAL = 60 * 1000;
+    public static final int DEFAULT_MAX_SESSIONS = 10000;
+
+    /**
+     * The background thread of the session stores.
+     */
+    static final ScheduledExecutorService WRITER = newWriter();
+
+    private final Store mPersistent;
+    private final int mMaxSessions;
+
+    private final Map<String, StandardSession> mSessions = new ConcurrentHashMap<>();
+    /**
+     * The sessions which are changed or removed since the last flush, a session is removed if it is not the one in
+     * {@link #mSessions} or its id has been changed.
+     */
+    private final Map<String, StandardSession> mPending = new ConcurrentHashMap<>();
+    /**
+     * The sessions which are only in the persistent store, they are indexed by the first sweep.
+     */
+    private final Map<String, Stored> mStored = new ConcurrentHashMap<>();
+    private boolean isIndexed;
+
+    private final AtomicBoolean isScheduled = new AtomicBoolean();
+    private final Object mFlushLock = new Object();
+    private final Object mEvictLock = new Object();
+    private final Object mSweepLock = new Object();
+    private final SessionStats mStats = new SessionStats(mSessions);
+
+    private final Runnable mFlushTask = new Runnable() {
+        @Override
+        public void run() {
+            isScheduled.set(false);
+            flush();
+        }
+    };
+
+    public TieredStore(@NonNull File directory) {
+        this(directory, DEFAULT_MAX_SESSIONS);
+    }
+
+    /**
+     * Create a store.
+     *
+     * @param directory the directory of the session files.
+     * @param maxSessions the max number of the live sessions.
+     */
+    public TieredStore(@NonNull File directory, int maxSessions) {
+        this(directory, maxSessions, SessionCodec.DEFAULT);
+    }
+
+    /**
+     * Create a store.
+     *
+     * @param directory the directory of the session files.
+     * @param maxSessions the max number of the live sessions.
+     * @param codec the format of the session files.
+     */
+    public TieredStore(@NonNull File directory, int maxSessions, @NonNull SessionCodec codec) {
+        this(new StandardStore(directory, codec), maxSessions);
+    }
+
+    /**
+     * Create a store.
+     *
+     * @param persistent the store of the sessions on disk, e.g. a {@link JournalStore}.
+     * @param maxSessions the max number of the live sessions.
+     */
+    public TieredStore(@NonNull Store persistent, int maxSessions) {
+        Assert.notNull(persistent, "The persistent store cannot be null.");
+        Assert.isTrue(maxSessions > 0, "The maxSessions must be greater than 0.");
+        this.mPersistent = persistent;
+        this.mMaxSessions = maxSessions;
+
+        Sweeper.schedule(this);
+    }
+
+    @Override
+    public boolean replace(@NonNull StandardSession session) {
+        Assert.notNull(session, "The session can not be null.");
+
+        String id = session.getId();
+        if (TextUtils.isEmpty(id)) {
+            throw new IllegalStateException("The session id can not be empty or null.");
+        }
+
+        if (mSessions.put(id, session) == null) {
+            trim();
+        }
+        markPending(id, session);
+        return true;
+    }
+
+    @Nullable
+    @Override
+    public StandardSession getSession(@NonNull String id) throws IOException, ClassNotFoundException {
+        if (TextUtils.isEmpty(id)) {
+            throw new IllegalArgumentException("The id can not be empty or null.");
+        }
+
+        StandardSession session = mSessions.get(id);
+        if (session != null) {
+            return session;
+        }
+
+        // The session was removed, its file is deleted by the next flush.
+        if (mPending.containsKey(id)) {
+            return null;
+        }
+
+        session = mPersistent.getSession(id);
+        if (session == null) {
+            return null;
+        }
+        session.setWritten();
+        mStored.remove(id);
+        StandardSession present = mSessions.putIfAbsent(id, session);
+        if (present != null) {
+            return present;
+        }
+        trim();
+        return session;
+    }
+
+    /**
+     * Keep the access of a session, it is written behind if the session is changed or its last accessed time was
+     * written more than {@link #ACCESS_WRITE_INTERVAL} ago.
+     *
+     * @param session the session which is accessed.
+     */
+    public void touch(@NonNull StandardSession session) {
+        if (session.isChanged()
+            || session.getAccessedTime() - session.getWrittenAccessedTime() >= ACCESS_WRITE_INTERVAL) {
+            replace(session);
+        }
+    }
+
+    /**
+     * Change the id of a session, the session is kept under the new id and the old id is written as removed, so the
+     * old id finds nothing, neither in memory nor in the persistent store.
+     *
+     * @param session the session.
+     * @param newId the new id.
+     */
+    public void changeId(@NonNull StandardSession session, @NonNull String newId) {
+        Assert.notNull(session, "The session can not be null.");
+        if (TextUtils.isEmpty(newId)) {
+            throw new IllegalArgumentException("The id can not be empty or null.");
+        }
+
+        String oldId = session.getId();
+        session.setId(newId);
+        if (TextUtils.isEmpty(oldId) || mSessions.get(oldId) != session) {
+            return;
+        }
+
+        // The old id stays pending until the session is gone from it, so it is never read from the persistent store.
+        mSessions.put(newId, session);
+        markPending(oldId, session);
+        mSessions.remove(oldId, session);
+        markPending(newId, session);
+    }
+
+    @Override
+    public boolean remove(@NonNull StandardSession session) {
+        String id = session.getId();
+        if (TextUtils.isEmpty(id)) {
+            throw new IllegalStateException("The session id can not be empty or null.");
+        }
+
+        mSessions.remove(id);
+        markPending(id, session);
+        return true;
+    }
+
+    /**
+     * Write the changed sessions to the persistent store and delete the removed ones, it blocks until all of them are
+     * done. It is called by the background writer, and can be called before the server stops so nothing is lost.
+     */
+    public void flush() {
+        synchronized (mFlushLock) {
+            Iterator<Map.Entry<String, StandardSession>> iterator = mPending.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, StandardSession> entry = iterator.next();
+                String id = entry.getKey();
+                StandardSession session = entry.getValue();
+                // A session which is changed again while it is written stays pending for the next flush.
+                mPending.remove(id, session);
+
+                try {
+                    if (!id.equals(session.getId())) {
+                        // The id of the session has been changed.
+                        mPersistent.remove(newRemoved(id));
+                    } else if (mSessions.get(id) == session) {
+                        session.setWritten();
+                        mPersistent.replace(session);
+                    } else {
+                        mPersistent.remove(session);
+                    }
+                } catch (IOException e) {
+                    session.setChanged();
+                    Log.w(TAG, "Failed to write the session " + id + ".", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Flush the changed sessions and close the persistent store if it is {@link Closeable}. It is called when the
+     * server stops, the store can still be used after it is closed.
+     *
+     * @throws IOException if the persistent store cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+        if (mPersistent instanceof Closeable) {
+            ((Closeable) mPersistent).close();
+        }
+    }
+
+    @NonNull
+    @Override
+    public String[] getIds() {
+        return mSessions.keySet().toArray(new String[0]);
+    }
+
+    /**
+     * Remove the expired sessions from the memory and the persistent store, and write the changed sessions which are
+     * not written yet. It is called by the background writer every {@link #SWEEP_INTERVAL}.
+     */
+    public void sweep() {
+        synchronized (mSweepLock) {
+            int expired = 0;
+            for (StandardSession session: mSessions.values()) {
+                if (!session.isValid()) {
+                    if (mSessions.remove(session.getId(), session)) {
+                        markPending(session.getId(), session);
+                        expired++;
+                    }
+                } else if (session.isChanged()) {
+                    markPending(session.getId(), session);
+                }
+            }
+
+            if (!isIndexed) {
+                expired += index();
+                isIndexed = true;
+            }
+
+            long now = System.currentTimeMillis();
+            for (Map.Entry<String, Stored> entry: mStored.entrySet()) {
+                if (entry.getValue().mExpiryTime <= now && removeStored(entry.getKey(), entry.getValue())) {
+                    expired++;
+                }
+            }
+            mStats.recordSweep(expired);
+            trimStored();
+        }
+    }
+
+    /**
+     * Read the sessions which are only in the persistent store, the expired ones are removed and the others are
+     * indexed.
+     *
+     * @return the number of the expired sessions.
+     */
+    private int index() {
+        int expired = 0;
+        for (String id: mPersistent.getIds()) {
+            if (mSessions.containsKey(id) || mPending.containsKey(id)) {
+                continue;
+            }
+            try {
+                StandardSession session = mPersistent.getSession(id);
+                if (session == null || mSessions.containsKey(id)) {
+                    continue;
+                }
+                if (session.isValid()) {
+                    mStored.put(id, new Stored(session));
+                } else {
+                    mPersistent.remove(session);
+                    expired++;
+                }
+            } catch (IOException | ClassNotFoundException e) {
+                // The broken session is removed by the store, so it is not read again.
+                Log.w(TAG, "Failed to read the session " + id + ".", e);
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Remove the least recently accessed sessions of the persistent store if there are more sessions than the max,
+     * the sessions in memory are counted too.
+     */
+    private void trimStored() {
+        int count = mSessions.size() + mStored.size() - mMaxSessions;
+        if (count <= 0) {
+            return;
+        }
+
+        PriorityQueue<Map.Entry<String, Stored>> oldest = new PriorityQueue<>(count,
+            (o1, o2) -> Long.compare(o2.getValue().mAccessedTime, o1.getValue().mAccessedTime));
+        for (Map.Entry<String, Stored> entry: mStored.entrySet()) {
+            oldest.offer(entry);
+            if (oldest.size() > count) {
+                oldest.poll();
+            }
+        }
+
+        int evicted = 0;
+        for (Map.Entry<String, Stored> entry: oldest) {
+            if (removeStored(entry.getKey(), entry.getValue())) {
+                evicted++;
+            }
+        }
+        mStats.recordEviction(evicted);
+    }
+
+    /**
+     * Remove a session which is only in the persistent store, unless it has been read into memory since.
+     */
+    private boolean removeStored(String id, Stored stored) {
+        if (!mStored.remove(id, stored) || mSessions.containsKey(id) || mPending.containsKey(id)) {
+            return false;
+        }
+        return mPersistent.remove(newRemoved(id));
+    }
+
+    /**
+     * Create the session which stands for an id to remove from the persistent store.
+     */
+    private static StandardSession newRemoved(String id) {
+        StandardSession session = new StandardSession();
+        session.setId(id);
+        return session;
+    }
+
+    /**
+     * Get the counters of the sessions.
+     */
+    @NonNull
+    public SessionStats getStats() {
+        return mStats;
+    }
+
+    /**
+     * Get the number of the sessions which are not flushed yet.
+     */
+    public int getPendingCount() {
+        return mPending.size();
+    }
+
+    /**
+     * Remove the least recently accessed sessions if there are more than the max, the sessions are removed until there
+     * are 1/16 less than the max, so the sessions are not sorted for every new one.
+     */
+    private void trim() {
+        if (mSessions.size() <= mMaxSessions) {
+            return;
+        }
+        synchronized (mEvictLock) {
+            int count = mSessions.size() - (mMaxSessions - mMaxSessions / 16);
+            if (count <= 0) {
+                return;
+            }
+
+            // The newest of the oldest sessions is on the top, so it is dropped when an older one comes.
+            PriorityQueue<StandardSession> oldest = new PriorityQueue<>(count,
+                (o1, o2) -> Long.compare(o2.getAccessedTime(), o1.getAccessedTime()));
+            for (StandardSession session: mSessions.values()) {
+                oldest.offer(session);
+                if (oldest.size() > count) {
+                    oldest.poll();
+                }
+            }
+
+            int evicted = 0;
+            for (StandardSession session: oldest) {
+                if (mSessions.remove(session.getId(), session)) {
+                    session.setValid(false);
+                    markPending(session.getId(), session);
+                    evicted++;
+                }
+            }
+            mStats.recordEviction(evicted);
+        }
+    }
+
+    private void markPending(String id, StandardSession session) {
+        mPending.put(id, session);
+        if (isScheduled.compareAndSet(false, true)) {
+            WRITER.schedule(mFlushTask, FLUSH_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static ScheduledExecutorService newWriter() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "AndServer-Session-Writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    /**
+     * The index entry of a session which is only in the persistent store.
+     */
+    private static class Stored {
+
+        private final long mAccessedTime;
+        private final long mExpiryTime;
+
+        private Stored(StandardSession session) {
+            this.mAccessedTime = session.getAccessedTime();
+            int interval = session.getMaxInactiveInterval();
+            this.mExpiryTime = interval > 0 ? mAccessedTime + interval * 1000L : Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Sweeps a store periodically. It holds the store weakly, so a store which is no longer used can be collected and
+     * then its sweeps are cancelled.
+     */
+    private static class Sweeper implements Runnable {
+
+        private final WeakReference<TieredStore> mStore;
+        private ScheduledFuture<?> mFuture;
+
+        private Sweeper(TieredStore store) {
+            this.mStore = new WeakReference<>(store);
+        }
+
+        static void schedule(TieredStore store) {
+            Sweeper sweeper = new Sweeper(store);
+            synchronized (sweeper) {
+                sweeper.mFuture = WRITER.scheduleWithFixedDelay(sweeper, SWEEP_INTERVAL, SWEEP_INTERVAL,
+                    TimeUnit.MILLISECONDS);
+            }
+        }
+
+        @Override
+        public synchronized void run() {
+            TieredStore store = mStore.get();
+            if (store == null) {
+                mFuture.cancel(false);
+                return;
+            }
+            try {
+                store.sweep();
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Failed to sweep the sessions.", e);
+            }
+        }
+    }
+}
@@ -19,17 +19,29 @@ package com.yanzhenjie.andserver.server.classic;
 import android.content.Context;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.yanzhenjie.andserver.ClassicServer;
 import com.yanzhenjie.andserver.ComponentRegister;
+import com.yanzhenjie.andserver.handler.DispatchStats;
 import com.yanzhenjie.andserver.handler.classic.ClassicDispatcherHandler;
+import com.yanzhenjie.andserver.http.session.SessionManager;
+import com.yanzhenjie.andserver.http.session.StandardSessionManager;
+import com.yanzhenjie.andserver.util.IOUtils;
 
 import org.apache.commons.lang3.tuple.ImmutableTriple;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.hc.core5.http.URIScheme;
+import org.apache.hc.core5.http.impl.io.DefaultBHttpServerConnection;
+import org.apache.hc.core5.http.io.HttpConnectionFactory;
 import org.apache.hc.core5.http.io.HttpRequestHandler;
 
+import java.io.Closeable;
 import java.util.Collections;
 import java.util.List;
 
+import javax.net.ServerSocketFactory;
+
 /**
  * Created by Zhenjie Yan on 3/7/20.
  */
@@ -37,11 +49,19 @@ public class ClassicWebServer extends BasicClassicServer<ClassicWebServer.Builde
 
     private final Context mContext;
     private final String mGroup;
+    private final boolean isRouteIndex;
+    private final SessionManager mSessionManager;
+    private final FileTransferStats mFileTransferStats = new FileTransferStats();
+
+    private volatile ClassicDispatcherHandler mDispatcherHandler;
 
     private ClassicWebServer(Builder builder) {
         super(builder);
         this.mContext = builder.context;
         this.mGroup = builder.group;
+        this.isRouteIndex = builder.routeIndex;
+        this.mSessionManager = builder.sessionManager == null
+            ? new StandardSessionManager(builder.context) : builder.sessionManager;
     }
 
     public static Builder newBuilder(Context context, String group) {
@@ -51,27 +71,92 @@ public class ClassicWebServer extends BasicClassicServer<ClassicWebServer.Builde
     @NonNull
     @Override
     protected List<ImmutableTriple<String, String, HttpRequestHandler>> requestHandlers() {
-        ClassicDispatcherHandler handler = new ClassicDispatcherHandler(mContext);
+        ClassicDispatcherHandler handler = new ClassicDispatcherHandler(mContext, mSessionManager);
+        handler.setRouteIndex(isRouteIndex);
         ComponentRegister register = new ComponentRegister(mContext);
         try {
             register.register(handler, mGroup);
         } catch (InstantiationException | IllegalAccessException e) {
             throw new RuntimeException(e);
         }
+        mDispatcherHandler = handler;
         return Collections.singletonList(new ImmutableTriple<>(null, "*", handler));
     }
 
+    @Nullable
+    @Override
+    protected Runnable requestShutdownHook() {
+        // Write the sessions which are not flushed yet, they would be lost when the process is killed.
+        return mSessionManager instanceof Closeable ? () -> IOUtils.closeQuietly((Closeable) mSessionManager) : null;
+    }
+
+    @NonNull
+    @Override
+    protected Pair<ServerSocketFactory, Boolean> requestServerSocketFactory() {
+        // The accepted sockets need a channel to send files by FileChannel#transferTo.
+        return Pair.of(mSslContext == null ? new FileTransferConnectionFactory.ChannelServerSocketFactory() : null,
+            true);
+    }
+
+    @NonNull
+    @Override
+    protected Pair<HttpConnectionFactory<? extends DefaultBHttpServerConnection>, Boolean> requestConnectionFactory() {
+        String scheme = mSslContext == null ? URIScheme.HTTP.id : URIScheme.HTTPS.id;
+        return Pair.of(new FileTransferConnectionFactory(scheme, mHttp1Config, mCharCodingConfig, mFileTransferStats),
+            true);
+    }
+
+    /**
+     * Get the counters of the file bodies sent by this server.
+     */
+    @NonNull
+    public FileTransferStats getFileTransferStats() {
+        return mFileTransferStats;
+    }
+
+    /**
+     * Get the sessions of this server.
+     */
+    @NonNull
+    public SessionManager getSessionManager() {
+        return mSessionManager;
+    }
+
+    /**
+     * Get the counters of the adapter lookups, the dispatcher is created when the server starts up.
+     *
+     * @return the counters, or {@code null} if the server has not been started.
+     */
+    @Nullable
+    public DispatchStats getDispatchStats() {
+        return mDispatcherHandler == null ? null : mDispatcherHandler.getDispatchStats();
+    }
+
     public static class Builder extends BasicClassicServer.Builder<Builder, ClassicWebServer>
-            implements ClassicServer.Builder<Builder, ClassicWebServer> {
+            implements ClassicServer.WebBuilder<Builder, ClassicWebServer> {
 
         private final Context context;
         private final String group;
+        private boolean routeIndex;
+        private SessionManager sessionManager;
 
         private Builder(Context context, String group) {
             this.context = context;
             this.group = group;
         }
 
+        @Override
+        public Builder setRouteIndex(boolean routeIndex) {
+            this.routeIndex = routeIndex;
+            return this;
+        }
+
+        @Override
+        public Builder setSessionManager(SessionManager sessionManager) {
+            this.sessionManager = sessionManager;
+            return this;
+        }
+
         @Override
         public ClassicWebServer build() {
             return new ClassicWebServer(this);
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2022 ISNing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.andserver.server.classic;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.yanzhenjie.andserver.framework.body.FileRegionEntity;
+import com.yanzhenjie.andserver.util.BufferPool;
+
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.config.CharCodingConfig;
+import org.apache.hc.core5.http.config.Http1Config;
+import org.apache.hc.core5.http.impl.CharCodingSupport;
+import org.apache.hc.core5.http.impl.DefaultContentLengthStrategy;
+import org.apache.hc.core5.http.impl.io.DefaultBHttpServerConnection;
+import org.apache.hc.core5.http.impl.io.SocketHolder;
+import org.apache.hc.core5.http.io.HttpConnectionFactory;
+import org.apache.hc.core5.http.io.entity.FileEntity;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+
+import javax.net.ServerSocketFactory;
+import javax.net.ssl.SSLSocket;
+
+/**
+ * Creates the connections of a {@link ClassicWebServer}, they send the {@link FileEntity} and {@link
+ * FileRegionEntity} bodies without copying the file through the heap.
+ *
+ * <p>On a plain socket which has a channel the file is sent by {@link FileChannel#transferTo(long, long,
+ * java.nio.channels.WritableByteChannel)}, so the kernel moves the bytes from the page cache to the socket. A TLS
+ * socket has to encrypt the bytes in user space, so the file is copied through pooled buffers instead.
+ */
+class FileTransferConnectionFactory implements HttpConnectionFactory<DefaultBHttpServerConnection> {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 16;
+
+    private final String mScheme;
+    private final Http1Config mHttp1Config;
+    private final CharCodingConfig mCharCodingConfig;
+    private final FileTransferStats mStats;
+    private final BufferPool mBufferPool = new BufferPool(BUFFER_SIZE, MAX_POOLED_BUFFERS, false);
+
+    FileTransferConnectionFactory(@NonNull String scheme, @Nullable Http1Config http1Config,
+                                  @Nullable CharCodingConfig charCodingConfig, @NonNull FileTransferStats stats) {
+        this.mScheme = scheme;
+        this.mHttp1Config = http1Config == null ? Http1Config.DEFAULT : http1Config;
+        this.mCharCodingConfig = charCodingConfig == null ? CharCodingConfig.DEFAULT : charCodingConfig;
+        this.mStats = stats;
+    }
+
+    @Override
+    public DefaultBHttpServerConnection createConnection(Socket socket) throws IOException {
+        FileTransferConnection connection = new FileTransferConnection(mScheme, mHttp1Config,
+            CharCodingSupport.createDecoder(mCharCodingConfig), CharCodingSupport.createEncoder(mCharCodingConfig));
+        connection.bind(socket);
+        return connection;
+    }
+
+    private class FileTransferConnection extends DefaultBHttpServerConnection {
+
+        private FileTransferConnection(String scheme, Http1Config http1Config, CharsetDecoder decoder,
+                                       CharsetEncoder encoder) {
+            super(scheme, http1Config, decoder, encoder);
+        }
+
+        @Override
+        public void sendResponseEntity(ClassicHttpResponse response) throws HttpException, IOException {
+            HttpEntity entity = response.getEntity();
+            if (!(entity instanceof FileEntity) && !(entity instanceof FileRegionEntity)) {
+                super.sendResponseEntity(response);
+                return;
+            }
+
+            // Only a body framed by Content-Length can bypass the content stream of the connection.
+            long length = entity.getContentLength();
+            if (length < 0 || DefaultContentLengthStrategy.INSTANCE.determineLength(response) != length) {
+                super.sendResponseEntity(response);
+                return;
+            }
+
+            FileChannel file;
+            long position;
+            if (entity instanceof FileRegionEntity) {
+                FileRegionEntity region = (FileRegionEntity) entity;
+                file = new RandomAccessFile(region.getFile(), "r").getChannel();
+                position = region.getPosition();
+            } else {
+                InputStream content = entity.getContent();
+                if (!(content instanceof FileInputStream)) {
+                    content.close();
+                    super.sendResponseEntity(response);
+                    return;
+                }
+                file = ((FileInputStream) content).getChannel();
+                position = 0;
+            }
+
+            try {
+                SocketHolder socketHolder = ensureOpen();
+                Socket socket = socketHolder.getSocket();
+                // Push the head out of the session buffer before writing to the socket directly.
+                flush();
+                SocketChannel channel = socket instanceof SSLSocket ? null : socket.getChannel();
+                if (channel != null && channel.isBlocking()) {
+                    transfer(file, channel, position, length);
+                    mStats.recordTransfer(length);
+                } else {
+                    OutputStream outputStream = socketHolder.getOutputStream();
+                    copy(file, outputStream, position, length);
+                    outputStream.flush();
+                    mStats.recordCopy(length);
+                }
+            } finally {
+                file.close();
+            }
+        }
+
+        private void transfer(FileChannel file, SocketChannel channel, long position, long length)
+            throws IOException {
+            long written = 0;
+            while (written < length) {
+                long count = file.transferTo(position + written, length - written, channel);
+                if (count <= 0) {
+                    throw new IOException("The file is shorter than its content length.");
+                }
+                written += count;
+            }
+        }
+
+        private void copy(FileChannel file, OutputStream outputStream, long position, long length)
+            throws IOException {
+            ByteBuffer buffer = mBufferPool.acquire();
+            try {
+                long written = 0;
+                while (written < length) {
+                    buffer.clear();
+                    if (length - written < buffer.capacity()) {
+                        buffer.limit((int) (length - written));
+                    }
+                    int count = file.read(buffer, position + written);
+                    if (count < 0) {
+                        throw new IOException("The file is shorter than its content length.");
+                    }
+                    outputStream.write(buffer.array(), 0, count);
+                    written += count;
+                }
+            } finally {
+                mBufferPool.release(buffer);
+            }
+        }
+    }
+
+    /**
+     * Creates the server sockets which are backed by channels, so the accepted sockets have a {@link SocketChannel}.
+     */
+    static class ChannelServerSocketFactory extends ServerSocketFactory {
+
+        @Override
+        public ServerSocket createServerSocket() throws IOException {
+            return ServerSocketChannel.open().socket();
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port) throws IOException {
+            return createServerSocket(port, 0, null);
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog) throws IOException {
+            return createServerSocket(port, backlog, null);
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog, InetAddress ifAddress) throws IOException {
+            ServerSocket serverSocket = createServerSocket();
+            serverSocket.bind(new InetSocketAddress(ifAddress, port), backlog);
+            return serverSocket;
+        }
+    }
+}
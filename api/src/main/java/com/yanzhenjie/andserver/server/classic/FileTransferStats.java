@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2022 ISNing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.andserver.server.classic;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the file bodies sent by a {@link ClassicWebServer}.
+ */
+public class FileTransferStats {
+
+    private final AtomicLong mTransferCount = new AtomicLong();
+    private final AtomicLong mTransferBytes = new AtomicLong();
+    private final AtomicLong mCopyCount = new AtomicLong();
+    private final AtomicLong mCopyBytes = new AtomicLong();
+
+    FileTransferStats() {
+    }
+
+    void recordTransfer(long bytes) {
+        mTransferCount.incrementAndGet();
+        mTransferBytes.addAndGet(bytes);
+    }
+
+    void recordCopy(long bytes) {
+        mCopyCount.incrementAndGet();
+        mCopyBytes.addAndGet(bytes);
+    }
+
+    /**
+     * Get the number of files sent by {@code FileChannel#transferTo}.
+     */
+    public long getTransferCount() {
+        return mTransferCount.get();
+    }
+
+    /**
+     * Get the number of bytes sent by {@code FileChannel#transferTo}.
+     */
+    public long getTransferBytes() {
+        return mTransferBytes.get();
+    }
+
+    /**
+     * Get the number of files copied through pooled buffers, it is the path of the TLS connections.
+     */
+    public long getCopyCount() {
+        return mCopyCount.get();
+    }
+
+    /**
+     * Get the number of bytes copied through pooled buffers.
+     */
+    public long getCopyBytes() {
+        return mCopyBytes.get();
+    }
+}
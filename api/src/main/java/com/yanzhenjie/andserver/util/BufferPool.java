@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2022 ISNing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.andserver.util;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of buffers of the same size. The buffers which are released when the pool is full are left to the
+ * garbage collector.
+ */
+public class BufferPool {
+
+    private final int mBufferSize;
+    private final int mMaxPooled;
+    private final boolean isDirect;
+
+    private final Queue<ByteBuffer> mBuffers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger mPooled = new AtomicInteger();
+
+    /**
+     * @param bufferSize the capacity of each buffer.
+     * @param maxPooled the max number of idle buffers kept by the pool.
+     * @param direct whether the buffers are allocated outside of the heap.
+     */
+    public BufferPool(int bufferSize, int maxPooled, boolean direct) {
+        Assert.isTrue(bufferSize > 0, "The bufferSize must be greater than 0.");
+        this.mBufferSize = bufferSize;
+        this.mMaxPooled = maxPooled;
+        this.isDirect = direct;
+    }
+
+    public int getBufferSize() {
+        return mBufferSize;
+    }
+
+    public boolean isDirect() {
+        return isDirect;
+    }
+
+    /**
+     * Take a cleared buffer from the pool, or allocate one if the pool is empty.
+     */
+    @NonNull
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = mBuffers.poll();
+        if (buffer == null) {
+            return isDirect ? ByteBuffer.allocateDirect(mBufferSize) : ByteBuffer.allocate(mBufferSize);
+        }
+        mPooled.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Give the buffer back to the pool, it must not be used by the caller any more.
+     */
+    public void release(@NonNull ByteBuffer buffer) {
+        if (buffer.capacity() != mBufferSize || buffer.isDirect() != isDirect) {
+            return;
+        }
+        if (mPooled.incrementAndGet() > mMaxPooled) {
+            mPooled.decrementAndGet();
+            return;
+        }
+        mBuffers.offer(buffer);
+    }
+}
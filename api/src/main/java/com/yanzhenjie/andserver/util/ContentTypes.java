@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2022 ISNing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.andserver.util;
+
+import androidx.annotation.Nullable;
+
+import org.apache.hc.core5.http.ContentType;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Converts the {@link MediaType} of the bodies to the {@link ContentType} of the entities. The conversions are
+ * cached, so the media types which are sent again and again are neither formatted nor parsed for every response.
+ */
+public class ContentTypes {
+
+    /**
+     * The max number of cached conversions, the media types beyond it are converted for every call.
+     */
+    public static final int MAX_SIZE = 256;
+
+    private static final Map<MediaType, ContentType> CACHE = new ConcurrentHashMap<>();
+
+    private ContentTypes() {
+    }
+
+    /**
+     * Get the {@link ContentType} of the media type.
+     *
+     * @param mediaType the media type.
+     *
+     * @return the content type, or {@code null} if the media type is {@code null}.
+     */
+    @Nullable
+    public static ContentType valueOf(@Nullable MediaType mediaType) {
+        if (mediaType == null) {
+            return null;
+        }
+        ContentType contentType = CACHE.get(mediaType);
+        if (contentType == null) {
+            contentType = ContentType.parse(mediaType.toString());
+            if (CACHE.size() < MAX_SIZE) {
+                CACHE.put(mediaType, contentType);
+            }
+        }
+        return contentType;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2022 ISNing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.andserver.util;
+
+import androidx.annotation.NonNull;
+
+/**
+ * The segments of a path, kept as boundaries over the original string. It splits the path like
+ * {@code Path#pathToList(String)}, but a segment only becomes a {@code String} when {@link #getSegment(int)} is
+ * called, so comparing and hashing segments allocates nothing.
+ */
+public class PathSegments {
+
+    private static final int[] EMPTY = new int[0];
+
+    private final String mPath;
+    private final int[] mBounds;
+
+    public PathSegments(@NonNull String path) {
+        this.mPath = path;
+
+        int start = 0;
+        int end = path.length();
+        if (end == 0) {
+            this.mBounds = EMPTY;
+            return;
+        }
+
+        while (start < end && path.charAt(start) == '/') {
+            start++;
+        }
+        while (end > start && path.charAt(end - 1) == '/') {
+            end--;
+        }
+
+        int count = 1;
+        for (int i = start; i < end; i++) {
+            if (path.charAt(i) == '/') {
+                count++;
+            }
+        }
+
+        int[] bounds = new int[count * 2];
+        int index = 0;
+        int segmentStart = start;
+        for (int i = start; i < end; i++) {
+            if (path.charAt(i) == '/') {
+                bounds[index++] = segmentStart;
+                bounds[index++] = i;
+                segmentStart = i + 1;
+            }
+        }
+        bounds[index++] = segmentStart;
+        bounds[index] = end;
+        this.mBounds = bounds;
+    }
+
+    /**
+     * Get the path which is split.
+     */
+    @NonNull
+    public String getPath() {
+        return mPath;
+    }
+
+    /**
+     * Get the number of segments.
+     */
+    public int size() {
+        return mBounds.length / 2;
+    }
+
+    /**
+     * Get the length of the segment.
+     */
+    public int length(int index) {
+        return mBounds[index * 2 + 1] - mBounds[index * 2];
+    }
+
+    /**
+     * Compute the hash of the segment, it is the same as the {@code hashCode()} of the segment string.
+     */
+    public int hash(int index) {
+        int hash = 0;
+        for (int i = mBounds[index * 2], end = mBounds[index * 2 + 1]; i < end; i++) {
+            hash = 31 * hash + mPath.charAt(i);
+        }
+        return hash;
+    }
+
+    /**
+     * Whether the segment is equal to the value.
+     */
+    public boolean equals(int index, @NonNull String value) {
+        int start = mBounds[index * 2];
+        int length = mBounds[index * 2 + 1] - start;
+        return value.length() == length && mPath.regionMatches(start, value, 0, length);
+    }
+
+    /**
+     * Get the segment as a new string.
+     */
+    @NonNull
+    public String getSegment(int index) {
+        return mPath.substring(mBounds[index * 2], mBounds[index * 2 + 1]);
+    }
+}
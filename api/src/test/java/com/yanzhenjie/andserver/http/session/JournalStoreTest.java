@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2022 ISNing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.andserver.http.session;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Simulates the crashes of a {@link JournalStore} by cutting its files, a reopened store must recover every complete
+ * record.
+ */
+public class JournalStoreTest {
+
+    private static final int COUNT = 5;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void recoverTornLastRecord() throws Exception {
+        File directory = mFolder.newFolder();
+        File journal = new File(directory, JournalStore.JOURNAL_NAME);
+
+        JournalStore store = new JournalStore(directory);
+        for (int i = 0; i < COUNT - 1; i++) {
+            store.replace(newSession(i));
+        }
+        long complete = journal.length();
+        store.replace(newSession(COUNT - 1));
+        store.close();
+        byte[] bytes = Files.readAllBytes(journal.toPath());
+
+        // Every length which cuts the last record, as if the crash happened while it was written.
+        for (int length = (int) complete; length < bytes.length; length++) {
+            File copy = mFolder.newFolder();
+            write(new File(copy, JournalStore.JOURNAL_NAME), Arrays.copyOf(bytes, length));
+
+            JournalStore recovered = new JournalStore(copy);
+            assertEquals("length " + length, COUNT - 1, recovered.getIds().length);
+            for (int i = 0; i < COUNT - 1; i++) {
+                assertSession(i, recovered.getSession(id(i)));
+            }
+            assertNull(recovered.getSession(id(COUNT - 1)));
+
+            // The torn record is cut off, so the next record is appended after the complete ones.
+            recovered.replace(newSession(COUNT - 1));
+            recovered.close();
+            assertEquals(bytes.length, new File(copy, JournalStore.JOURNAL_NAME).length());
+
+            JournalStore reopened = new JournalStore(copy);
+            assertEquals(COUNT, reopened.getIds().length);
+            assertSession(COUNT - 1, reopened.getSession(id(COUNT - 1)));
+            reopened.close();
+        }
+    }
+
+    @Test
+    public void dropCorruptedLastRecord() throws Exception {
+        File directory = mFolder.newFolder();
+        File journal = new File(directory, JournalStore.JOURNAL_NAME);
+
+        JournalStore store = new JournalStore(directory);
+        for (int i = 0; i < COUNT; i++) {
+            store.replace(newSession(i));
+        }
+        store.close();
+
+        try (RandomAccessFile file = new RandomAccessFile(journal, "rw")) {
+            long position = file.length() - 1;
+            file.seek(position);
+            int last = file.read();
+            file.seek(position);
+            file.write(last ^ 0xFF);
+        }
+
+        JournalStore recovered = new JournalStore(directory);
+        assertEquals(COUNT - 1, recovered.getIds().length);
+        for (int i = 0; i < COUNT - 1; i++) {
+            assertSession(i, recovered.getSession(id(i)));
+        }
+        assertNull(recovered.getSession(id(COUNT - 1)));
+        recovered.close();
+    }
+
+    @Test
+    public void recoverAfterCompact() throws Exception {
+        File directory = mFolder.newFolder();
+
+        JournalStore store = new JournalStore(directory);
+        for (int i = 0; i < COUNT; i++) {
+            store.replace(newSession(i));
+            store.replace(newSession(i));
+        }
+        store.remove(newSession(0));
+        store.compact();
+        assertEquals(0, new File(directory, JournalStore.JOURNAL_NAME).length());
+
+        store.remove(newSession(1));
+        store.close();
+
+        JournalStore reopened = new JournalStore(directory);
+        assertEquals(COUNT - 2, reopened.getIds().length);
+        assertNull(reopened.getSession(id(0)));
+        assertNull(reopened.getSession(id(1)));
+        for (int i = 2; i < COUNT; i++) {
+            assertSession(i, reopened.getSession(id(i)));
+        }
+        reopened.close();
+    }
+
+    @Test
+    public void reopenAfterClose() throws Exception {
+        File directory = mFolder.newFolder();
+
+        JournalStore store = new JournalStore(directory);
+        store.replace(newSession(0));
+        store.close();
+
+        // Used again after it is closed, e.g. when the server starts again.
+        assertSession(0, store.getSession(id(0)));
+        store.replace(newSession(1));
+        store.close();
+
+        JournalStore reopened = new JournalStore(directory);
+        assertEquals(2, reopened.getIds().length);
+        assertSession(0, reopened.getSession(id(0)));
+        assertSession(1, reopened.getSession(id(1)));
+        reopened.close();
+    }
+
+    @Test
+    public void removeUndecodableRecord() throws Exception {
+        File directory = mFolder.newFolder();
+
+        // The records are complete but not sessions, e.g. written by another codec.
+        JournalStore store = new JournalStore(directory, new SessionCodec() {
+            @Override
+            public void encode(@NonNull StandardSession session, @NonNull OutputStream stream) throws IOException {
+                stream.write(new byte[] {1, 2, 3});
+            }
+
+            @NonNull
+            @Override
+            public StandardSession decode(@NonNull InputStream stream) {
+                throw new UnsupportedOperationException();
+            }
+        });
+        store.replace(newSession(0));
+        store.replace(newSession(1));
+        store.close();
+
+        JournalStore recovered = new JournalStore(directory);
+        assertEquals(2, recovered.getIds().length);
+        try {
+            recovered.getSession(id(0));
+            fail("The record cannot be decoded.");
+        } catch (IOException expected) {
+        }
+        assertArrayEquals(new String[] {id(1)}, recovered.getIds());
+        assertNull(recovered.getSession(id(0)));
+        recovered.close();
+
+        JournalStore reopened = new JournalStore(directory);
+        assertArrayEquals(new String[] {id(1)}, reopened.getIds());
+        reopened.close();
+    }
+
+    private static String id(int index) {
+        return "session" + index;
+    }
+
+    private static StandardSession newSession(int index) {
+        StandardSession session = new StandardSession();
+        session.setId(id(index));
+        session.setCreatedTime(1000L * index);
+        session.setLastAccessedTime(2000L * index);
+        session.setValid(true);
+        session.setAttribute("name", "value" + index);
+        session.setAttribute("bytes", new byte[] {(byte) index, 1, 2, 3});
+        return session;
+    }
+
+    private static void assertSession(int index, StandardSession session) {
+        assertNotNull(id(index), session);
+        assertEquals(id(index), session.getId());
+        assertEquals(1000L * index, session.getCreatedTime());
+        assertEquals(2000L * index, session.getLastAccessedTime());
+        assertEquals("value" + index, session.getAttribute("name"));
+        assertArrayEquals(new byte[] {(byte) index, 1, 2, 3}, (byte[]) session.getAttribute("bytes"));
+    }
+
+    private static void write(File file, byte[] bytes) throws IOException {
+        try (FileOutputStream stream = new FileOutputStream(file)) {
+            stream.write(bytes);
+        }
+    }
+}
@@ -41,6 +41,12 @@ import javax.annotation.Nonnull;
  */
 public class AndServerPlugin implements Plugin<Project> {
 
+    /**
+     * Set {@code andServer.compressAssets=true} in {@code gradle.properties} to write the {@code .gz} variants of the
+     * compressible assets when they are merged.
+     */
+    public static final String PROPERTY_COMPRESS_ASSETS = "andServer.compressAssets";
+
     @Override
     public void apply(@Nonnull Project project) {
         Log.inject(project);
@@ -60,7 +66,7 @@ public class AndServerPlugin implements Plugin<Project> {
 
     private void configGenerator(Project project, DomainObjectSet<? extends BaseVariant> variants) {
         variants.all(it -> {
-            configTask(it);
+            configTask(project, it);
 
             File outputDir = new File(project.getBuildDir(), "generated/source/andServer/" + it.getDirName());
             String taskName = String.format("generate%sAppInfo", capitalize(it.getName()));
@@ -75,10 +81,16 @@ public class AndServerPlugin implements Plugin<Project> {
         });
     }
 
-    private void configTask(BaseVariant variant) {
+    private void configTask(Project project, BaseVariant variant) {
+        boolean compressAssets = Boolean.parseBoolean(String.valueOf(project.findProperty(PROPERTY_COMPRESS_ASSETS)));
         Action<Task> action = task -> {
+            File assetsDir = variant.getMergeAssetsProvider().get().getOutputDir().get().getAsFile();
+            if (compressAssets) {
+                new AssetCompressor().compress(assetsDir);
+            }
+
             String filename = String.format("%s.andserver", variant.getApplicationId());
-            File file = new File(variant.getMergeAssetsProvider().get().getOutputDir().get().getAsFile(), filename);
+            File file = new File(assetsDir, filename);
             if (!file.exists()) {
                 try {
                     file.createNewFile();
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2022 ISNing
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yanzhenjie.andserver.plugin;
+
+import com.yanzhenjie.andserver.plugin.util.Log;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes a {@code .gz} sibling next to every compressible asset, which the websites send to the clients accepting
+ * gzip instead of compressing the asset for every request.
+ */
+public class AssetCompressor {
+
+    private static final Set<String> EXTENSIONS = new HashSet<>(
+        Arrays.asList("html", "htm", "css", "js", "mjs", "json", "svg", "xml", "txt", "map"));
+    private static final long MIN_LENGTH = 1024;
+
+    private final Log mLog = new Log();
+
+    /**
+     * Compress the assets in the directory and its subdirectories.
+     *
+     * @param directory the directory of the merged assets.
+     */
+    public void compress(File directory) {
+        File[] children = directory.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child: children) {
+            if (child.isDirectory()) {
+                compress(child);
+            } else if (isCompressible(child)) {
+                try {
+                    compressFile(child);
+                } catch (IOException e) {
+                    mLog.w("Failed to compress %s: %s", child.getPath(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    private boolean isCompressible(File file) {
+        String name = file.getName();
+        int index = name.lastIndexOf('.');
+        if (index < 0 || file.length() < MIN_LENGTH) {
+            return false;
+        }
+        return EXTENSIONS.contains(name.substring(index + 1).toLowerCase(Locale.ENGLISH));
+    }
+
+    private void compressFile(File file) throws IOException {
+        File target = new File(file.getPath() + ".gz");
+        if (target.exists() && target.lastModified() >= file.lastModified()) {
+            return;
+        }
+
+        byte[] content = FileUtils.readFileToByteArray(file);
+        try (OutputStream stream = new BestGzipOutputStream(new FileOutputStream(target))) {
+            stream.write(content);
+        }
+
+        // The identity asset is sent if the compression saves nothing.
+        if (target.length() >= content.length) {
+            FileUtils.deleteQuietly(target);
+        } else {
+            mLog.d("Compressed %s, %d -> %d bytes.", file.getPath(), content.length, target.length());
+        }
+    }
+
+    private static class BestGzipOutputStream extends GZIPOutputStream {
+
+        private BestGzipOutputStream(OutputStream out) throws IOException {
+            super(out);
+            def.setLevel(Deflater.BEST_COMPRESSION);
+        }
+    }
+}
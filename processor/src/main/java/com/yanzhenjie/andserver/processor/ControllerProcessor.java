@@ -138,6 +138,7 @@ public class ControllerProcessor extends BaseProcessor implements Patterns {
     private TypeName mMethodMapping;
     private TypeName mPairMapping;
     private TypeName mPathMapping;
+    private TypeName mPathSegment;
     private TypeName mMappingList;
 
     private final TypeName mString = TypeName.get(String.class);
@@ -201,6 +202,7 @@ public class ControllerProcessor extends BaseProcessor implements Patterns {
         mMethodMapping = TypeName.get(elements.getTypeElement(Constants.METHOD_MAPPING_TYPE).asType());
         mPairMapping = TypeName.get(elements.getTypeElement(Constants.PAIR_MAPPING_TYPE).asType());
         mPathMapping = TypeName.get(elements.getTypeElement(Constants.PATH_MAPPING_TYPE).asType());
+        mPathSegment = ClassName.get(elements.getTypeElement(Constants.PATH_MAPPING_TYPE)).nestedClass("Segment");
         mMappingList = ParameterizedTypeName.get(ClassName.get(Map.class), mMapping, handler);
     }
 
@@ -275,7 +277,7 @@ public class ControllerProcessor extends BaseProcessor implements Patterns {
 
             String typeName = type.getQualifiedName().toString();
             Mapping typeMapping = getTypeMapping(type);
-            validateMapping(typeMapping, typeName);
+            validateMapping(typeMapping, typeName, type);
 
             CrossOrigin typeCrossOrigin = type.getAnnotation(CrossOrigin.class);
 
@@ -288,7 +290,7 @@ public class ControllerProcessor extends BaseProcessor implements Patterns {
                 .addStatement("this.mMappingMap = new $T<>()", LinkedHashMap.class);
             for (ExecutableElement execute: executes) {
                 Mapping mapping = getExecuteMapping(execute);
-                validateExecuteMapping(mapping, typeName + "#" + execute.getSimpleName().toString() + "()");
+                validateExecuteMapping(mapping, typeName + "#" + execute.getSimpleName().toString() + "()", execute);
 
                 mapping = new Merge(typeMapping, mapping);
                 rootCode.beginControlFlow("\n").addStatement("$T mapping = new $T()", mMapping, mMapping);
@@ -410,7 +412,7 @@ public class ControllerProcessor extends BaseProcessor implements Patterns {
         return mapping;
     }
 
-    private void validateMapping(Mapping mapping, String host) {
+    private void validateMapping(Mapping mapping, String host, Element element) {
         String[] paths = mapping.path();
         if (ArrayUtils.isEmpty(paths)) {
             paths = mapping.value();
@@ -450,8 +452,8 @@ public class ControllerProcessor extends BaseProcessor implements Patterns {
                 try {
                     Utils.parseMimeType(consume);
                 } catch (RuntimeException e) {
-                    throw new IllegalArgumentException(
-                        String.format("The format of consume [%s] is wrong on %s.", consume, host));
+                    mLog.e(String.format("The format of consume [%s] is wrong on %s: %s", consume, host, e.getMessage()),
+                        element);
                 }
             }
         }
@@ -462,8 +464,8 @@ public class ControllerProcessor extends BaseProcessor implements Patterns {
                 try {
                     Utils.parseMimeType(produce);
                 } catch (RuntimeException e) {
-                    throw new IllegalArgumentException(
-                        String.format("The format of produce [%s] is wrong on %s.", produce, host));
+                    mLog.e(String.format("The format of produce [%s] is wrong on %s: %s", produce, host, e.getMessage()),
+                        element);
                 }
             }
         }
@@ -510,27 +512,31 @@ public class ControllerProcessor extends BaseProcessor implements Patterns {
         return mapping;
     }
 
-    private void validateExecuteMapping(Mapping mapping, String host) {
+    private void validateExecuteMapping(Mapping mapping, String host, Element element) {
         String[] paths = mapping.path();
         if (ArrayUtils.isEmpty(paths)) {
             paths = mapping.value();
         }
         Validate.notEmpty(paths, String.format("The path value of method cannot be empty on %s.", host));
-        validateMapping(mapping, host);
+        validateMapping(mapping, host, element);
     }
 
     private void addMapping(CodeBlock.Builder builder, Mapping mapping) {
         String[] pathArray = mapping.path();
         builder.add("\n").addStatement("$T path = new $T()", mPathMapping, mPathMapping);
         for (String path: pathArray) {
-            builder.addStatement("path.addRule($S)", path);
+            List<CodeBlock> segments = new ArrayList<>();
+            for (String segment: pathToSegments(path)) {
+                segments.add(CodeBlock.of("new $T($S, $L)", mPathSegment, segment, segment.contains("{")));
+            }
+            builder.addStatement("path.addRule($L)", CodeBlock.join(segments, ", "));
         }
         builder.addStatement("mapping.setPath(path)");
 
         String[] methodArray = mapping.method();
         builder.add("\n").addStatement("$T method = new $T()", mMethodMapping, mMethodMapping);
         for (String method: methodArray) {
-            builder.addStatement("method.addRule($S)", method);
+            builder.addStatement("method.addRule($T.$L)", mHttpMethod, method.toUpperCase(Locale.ENGLISH));
         }
         builder.addStatement("mapping.setMethod(method)");
 
@@ -538,7 +544,7 @@ public class ControllerProcessor extends BaseProcessor implements Patterns {
         if (ArrayUtils.isNotEmpty(paramArray)) {
             builder.add("\n").addStatement("$T param = new $T()", mPairMapping, mPairMapping);
             for (String param: paramArray) {
-                builder.addStatement("param.addRule($S)", param);
+                addPairRule(builder, "param", param);
             }
             builder.addStatement("mapping.setParam(param)");
         }
@@ -547,7 +553,7 @@ public class ControllerProcessor extends BaseProcessor implements Patterns {
         if (ArrayUtils.isNotEmpty(headerArray)) {
             builder.add("\n").addStatement("$T header = new $T()", mPairMapping, mPairMapping);
             for (String header: headerArray) {
-                builder.addStatement("header.addRule($S)", header);
+                addPairRule(builder, "header", header);
             }
             builder.addStatement("mapping.setHeader(header)");
         }
@@ -556,7 +562,7 @@ public class ControllerProcessor extends BaseProcessor implements Patterns {
         if (ArrayUtils.isNotEmpty(consumeArray)) {
             builder.add("\n").addStatement("$T consume = new $T()", mMimeTypeMapping, mMimeTypeMapping);
             for (String consume: consumeArray) {
-                builder.addStatement("consume.addRule($S)", consume);
+                addMimeRule(builder, "consume", consume);
             }
             builder.addStatement("mapping.setConsume(consume)");
         }
@@ -565,12 +571,54 @@ public class ControllerProcessor extends BaseProcessor implements Patterns {
         if (ArrayUtils.isNotEmpty(produceArray)) {
             builder.add("\n").addStatement("$T produce = new $T()", mMimeTypeMapping, mMimeTypeMapping);
             for (String produce: produceArray) {
-                builder.addStatement("produce.addRule($S)", produce);
+                addMimeRule(builder, "produce", produce);
             }
             builder.addStatement("mapping.setProduce(produce)");
         }
     }
 
+    /**
+     * Split the path like {@code Path#pathToList(String)} does at runtime.
+     */
+    private List<String> pathToSegments(String path) {
+        List<String> segments = new ArrayList<>();
+        if (StringUtils.isNotEmpty(path)) {
+            path = StringUtils.strip(path, "/");
+            for (String segment: path.split("/")) {
+                segments.add(segment);
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Parse the pair rule like {@code Pair#addRule(String)} does at runtime, the patterns are matched in the same order
+     * and the key and the value are split in the same way, so a rule means the same on both paths.
+     */
+    private void addPairRule(CodeBlock.Builder builder, String name, String rule) {
+        if (rule.matches(PAIR_NO_VALUE)) {
+            String[] keyValue = rule.split("=");
+            String key = keyValue[0];
+            builder.addStatement("$L.addRule($S, $S, false, true)", name, key.substring(0, key.length() - 1),
+                keyValue[1]);
+        } else if (rule.matches(PAIR_KEY_VALUE)) {
+            String[] keyValue = rule.split("=");
+            builder.addStatement("$L.addRule($S, $S, false, false)", name, keyValue[0], keyValue[1]);
+        } else if (rule.matches(PAIR_NO_KEY)) {
+            builder.addStatement("$L.addRule($S, null, true, false)", name, rule.substring(1));
+        } else if (rule.matches(PAIR_KEY)) {
+            builder.addStatement("$L.addRule($S, null, false, false)", name, rule);
+        }
+    }
+
+    /**
+     * The mime rule is parsed by {@code MediaType#valueOf(String)} once the adapter is created, it has been validated
+     * with the same rules.
+     */
+    private void addMimeRule(CodeBlock.Builder builder, String name, String rule) {
+        builder.addStatement("$L.addRule($S)", name, rule);
+    }
+
     private void addAddition(CodeBlock.Builder builder, Addition addition) {
         if (addition == null) {
             return;
@@ -764,7 +812,6 @@ public class ControllerProcessor extends BaseProcessor implements Patterns {
 
         CodeBlock.Builder handleCode = CodeBlock.builder()
             .addStatement("$T context = ($T)request.getAttribute($T.ANDROID_CONTEXT)", mContext, mContext, mRequest)
-            .addStatement("String httpPath = request.getPath()")
             .addStatement("$T httpMethod = request.getMethod()", mHttpMethod)
             .add("\n")
             .addStatement("Object converterObj = request.getAttribute($T.HTTP_MESSAGE_CONVERTER)", mRequest)
@@ -783,8 +830,6 @@ public class ControllerProcessor extends BaseProcessor implements Patterns {
             .addStatement("requestBody = request.getBody()")
             .endControlFlow()
             .add("\n")
-            .addStatement("$T<String, String> pathMap = getPathVariable(httpPath)", Map.class)
-            .add("\n")
             .add("/** ---------- Building Parameters ---------- **/ ")
             .add("\n");
 
@@ -925,7 +970,7 @@ public class ControllerProcessor extends BaseProcessor implements Patterns {
                     Validate.isTrue(isBlurred, "The PathVariable annotation must have a blurred path, " +
                         "for example [/project/{name}]. The error occurred on %s.", host);
 
-                    handleCode.add("\n").addStatement("String path$LStr = pathMap.get($S)", i, name);
+                    handleCode.add("\n").addStatement("String path$LStr = getPathVariable(request, $S)", i, name);
 
                     if (pathVariable.required() && StringUtils.isEmpty(defaultValue)) {
                         handleCode.beginControlFlow("if ($T.isEmpty(path$LStr))", mTextUtils, i)
@@ -18,6 +18,7 @@ package com.yanzhenjie.andserver.processor.util;
 import org.apache.commons.lang3.StringUtils;
 
 import javax.annotation.processing.Messager;
+import javax.lang.model.element.Element;
 import javax.tools.Diagnostic;
 
 /**
@@ -43,6 +44,12 @@ public class Logger {
         }
     }
 
+    public void e(CharSequence error, Element element) {
+        if (StringUtils.isNotEmpty(error)) {
+            mMessager.printMessage(Diagnostic.Kind.ERROR, error, element);
+        }
+    }
+
     public void e(Throwable error) {
         if (null != error) {
             mMessager.printMessage(Diagnostic.Kind.ERROR,
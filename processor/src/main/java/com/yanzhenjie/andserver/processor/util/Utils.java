@@ -16,6 +16,7 @@
 package com.yanzhenjie.andserver.processor.util;
 
 import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
 
 import java.util.Collection;
 import java.util.HashMap;
@@ -43,34 +44,35 @@ public class Utils {
         return values.toArray(new String[0]);
     }
 
+    /**
+     * Validate the mime type with the rules of {@code MimeType#valueOf(String)} at runtime.
+     */
     public static void parseMimeType(String rawdata) {
-        String primaryType;
-        String subType;
-
-        int slashIndex = rawdata.indexOf(47);
-        int semIndex = rawdata.indexOf(59);
-        if (slashIndex < 0 && semIndex < 0) {
-            throw new RuntimeException("Unable to find a sub type.");
-        } else if (slashIndex < 0) {
-            throw new RuntimeException("Unable to find a sub type.");
-        } else {
-            if (semIndex < 0) {
-                primaryType = rawdata.substring(0, slashIndex).trim().toLowerCase(Locale.ENGLISH);
-                subType = rawdata.substring(slashIndex + 1).trim().toLowerCase(Locale.ENGLISH);
-            } else {
-                if (slashIndex >= semIndex) {
-                    throw new RuntimeException("Unable to find a sub type.");
-                }
+        if (StringUtils.isEmpty(rawdata)) {
+            throw new RuntimeException("The mime type must not be empty.");
+        }
 
-                primaryType = rawdata.substring(0, slashIndex).trim().toLowerCase(Locale.ENGLISH);
-                subType = rawdata.substring(slashIndex + 1, semIndex).trim().toLowerCase(Locale.ENGLISH);
-            }
+        int semIndex = rawdata.indexOf(';');
+        String fullType = (semIndex >= 0 ? rawdata.substring(0, semIndex) : rawdata).trim();
+        if (fullType.isEmpty()) {
+            throw new RuntimeException("The content type must not be empty.");
+        }
+        if ("*".equals(fullType)) {
+            fullType = "*/*";
+        }
 
-            if (!isValidToken(primaryType)) {
-                throw new RuntimeException("Primary type is invalid.");
-            } else if (!isValidToken(subType)) {
-                throw new RuntimeException("Sub type is invalid.");
-            }
+        int slashIndex = fullType.indexOf('/');
+        if (slashIndex < 0) {
+            throw new RuntimeException("Unable to find a sub type.");
+        }
+        String primaryType = fullType.substring(0, slashIndex).trim().toLowerCase(Locale.ENGLISH);
+        String subType = fullType.substring(slashIndex + 1).trim().toLowerCase(Locale.ENGLISH);
+        if (!isValidToken(primaryType)) {
+            throw new RuntimeException("Primary type is invalid.");
+        } else if (!isValidToken(subType)) {
+            throw new RuntimeException("Sub type is invalid.");
+        } else if ("*".equals(primaryType) && !"*".equals(subType)) {
+            throw new RuntimeException("The wildcard type is legal only in '*/*'.");
         }
     }
 